@@ -0,0 +1,87 @@
+package atirek.pothiwala.picker.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CacheIndexBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int entryCount;
+
+    private File directory;
+    private File[] files;
+    private CacheIndex index;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache-benchmark").toFile();
+        files = new File[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            files[i] = new File(directory, PickerFiles.newFileName("jpg"));
+            if (!files[i].createNewFile()) {
+                throw new IOException("Unable to create " + files[i]);
+            }
+        }
+        //Seeding from the folder is the same path an upgraded install takes on first use
+        index = new CacheIndex(directory);
+        if (index.getEntryCount() != entryCount) {
+            throw new IllegalStateException("Seeded " + index.getEntryCount() + " of " + entryCount);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        index.clear();
+        for (File file : files) {
+            PickerFiles.deleteFile(file);
+        }
+        PickerFiles.deleteFile(directory);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return index.contains(nextFile());
+    }
+
+    //Includes rewriting the index file, which every access does
+    @Benchmark
+    public void touch() {
+        index.touch(nextFile());
+    }
+
+    @Benchmark
+    public List<CacheIndex.Entry> entries() {
+        return index.getEntries();
+    }
+
+    @Benchmark
+    public CacheIndex seed() {
+        CacheIndex seeded = new CacheIndex(directory);
+        seeded.getEntryCount();
+        return seeded;
+    }
+
+    private File nextFile() {
+        File file = files[next];
+        next = (next + 1) % files.length;
+        return file;
+    }
+}
@@ -0,0 +1,154 @@
+package atirek.pothiwala.picker.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+//Time per copy; divide fileSize by the score for throughput
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MILLISECONDS)
+public class CopyBenchmark {
+
+    public enum Strategy {
+        //What FileCopier does for a descriptor without transforms
+        TRANSFER,
+        //What FileCopier does with transforms, and for streams
+        POOLED_HEAP,
+        SMALL_HEAP,
+        DIRECT,
+        STREAM,
+        //The dedup path, a SHA-256 sink on the pooled buffers
+        DIGEST
+    }
+
+    @Param({"65536", "4194304", "67108864"})
+    public int fileSize;
+
+    @Param({"TRANSFER", "POOLED_HEAP", "SMALL_HEAP", "DIRECT", "STREAM", "DIGEST"})
+    public Strategy strategy;
+
+    private File directory;
+    private File source;
+    private File target;
+    private ByteBuffer smallHeapBuffer;
+    private ByteBuffer directBuffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("copy-benchmark").toFile();
+        source = new File(directory, "source.bin");
+        target = new File(directory, "target.bin");
+        smallHeapBuffer = ByteBuffer.allocate(8 * 1024);
+        directBuffer = ByteBuffer.allocateDirect(StreamCopier.BUFFER_SIZE);
+
+        byte[] chunk = new byte[64 * 1024];
+        new Random(42).nextBytes(chunk);
+        FileOutputStream outputStream = new FileOutputStream(source);
+        try {
+            for (int written = 0; written < fileSize; written += chunk.length) {
+                outputStream.write(chunk, 0, Math.min(chunk.length, fileSize - written));
+            }
+        } finally {
+            StreamCopier.closeQuietly(outputStream);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PickerFiles.deleteFile(source);
+        PickerFiles.deleteFile(target);
+        PickerFiles.deleteFile(directory);
+    }
+
+    @Benchmark
+    public long copy() throws IOException, NoSuchAlgorithmException {
+        FileInputStream inputStream = new FileInputStream(source);
+        FileOutputStream outputStream = new FileOutputStream(target);
+        try {
+            switch (strategy) {
+                case TRANSFER:
+                    return StreamCopier.copy(inputStream.getChannel(), outputStream.getChannel(), null, null);
+                case POOLED_HEAP:
+                    return StreamCopier.copy(inputStream.getChannel(), outputStream.getChannel(), null, Collections.singletonList(new CountSink()));
+                case SMALL_HEAP:
+                    return StreamCopier.copy(inputStream.getChannel(), outputStream.getChannel(), smallHeapBuffer, null, null);
+                case DIRECT:
+                    return StreamCopier.copy(inputStream.getChannel(), outputStream.getChannel(), directBuffer, null, null);
+                case STREAM:
+                    return StreamCopier.copy(inputStream, outputStream.getChannel(), null, null);
+                case DIGEST:
+                    List<DigestSink> sinks = Collections.singletonList(new DigestSink());
+                    long length = StreamCopier.copy(inputStream.getChannel(), outputStream.getChannel(), null, sinks);
+                    StreamCopier.finish(sinks);
+                    return length;
+                default:
+                    throw new IllegalStateException("Unknown strategy " + strategy);
+            }
+        } finally {
+            StreamCopier.closeQuietly(inputStream);
+            StreamCopier.closeQuietly(outputStream);
+        }
+    }
+
+    //Forces the buffered path without adding work of its own
+    private static class CountSink implements ByteSink {
+
+        private long count = 0;
+
+        @Override
+        public void update(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+
+    private static class DigestSink implements ByteSink {
+
+        private final MessageDigest digest;
+
+        DigestSink() throws NoSuchAlgorithmException {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+
+        @Override
+        public void update(byte[] buffer, int offset, int length) {
+            digest.update(buffer, offset, length);
+        }
+
+        @Override
+        public void finish() {
+            digest.digest();
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package atirek.pothiwala.picker.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NamingBenchmark {
+
+    private final File target = new File("/data/picker/0b1e3c84-4f0e-4d7b-9a51-6f1c3e2d9a10.jpg");
+    public String mimeType = "image/jpeg; charset=binary";
+    public String path = "/storage/emulated/0/DCIM/Camera/IMG_20191104_180517.jpg?width=1080#preview";
+    public String name = "0b1e3c84-4f0e-4d7b-9a51-6f1c3e2d9a10.jpg.part";
+
+    @Benchmark
+    public String newFileName() {
+        return PickerFiles.newFileName("jpg");
+    }
+
+    @Benchmark
+    public File partialFile() {
+        return PickerFiles.partialFile(target);
+    }
+
+    @Benchmark
+    public boolean isPickedFile() {
+        return PickerFiles.isPickedFile(name);
+    }
+
+    @Benchmark
+    public String extensionFromMimeType() {
+        return MimeTypes.getExtension(mimeType);
+    }
+
+    @Benchmark
+    public String extensionFromPath() {
+        return MimeTypes.getExtensionFromPath(path);
+    }
+}
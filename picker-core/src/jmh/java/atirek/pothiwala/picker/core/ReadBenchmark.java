@@ -0,0 +1,107 @@
+package atirek.pothiwala.picker.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+//Scattered small reads, the way atom and xref parsers walk a file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+public class ReadBenchmark {
+
+    public enum Strategy {
+        //A fresh seek and read per field, what the parsers did before
+        SEEK,
+        POSITIONAL,
+        MAPPED
+    }
+
+    private static final int READS = 1024;
+
+    @Param({"4194304", "67108864"})
+    public int fileSize;
+
+    @Param({"SEEK", "POSITIONAL", "MAPPED"})
+    public Strategy strategy;
+
+    private File directory;
+    private File source;
+    private RandomAccessFile randomAccessFile;
+    private MappedReader reader;
+    private ByteBuffer mapping;
+    private final ByteBuffer field = ByteBuffer.allocate(8);
+    private final long[] offsets = new long[READS];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("read-benchmark").toFile();
+        source = new File(directory, "source.bin");
+
+        Random random = new Random(42);
+        byte[] chunk = new byte[64 * 1024];
+        random.nextBytes(chunk);
+        FileOutputStream outputStream = new FileOutputStream(source);
+        try {
+            for (int written = 0; written < fileSize; written += chunk.length) {
+                outputStream.write(chunk, 0, Math.min(chunk.length, fileSize - written));
+            }
+        } finally {
+            StreamCopier.closeQuietly(outputStream);
+        }
+        for (int i = 0; i < READS; i++) {
+            offsets[i] = random.nextInt(fileSize - 8);
+        }
+
+        randomAccessFile = new RandomAccessFile(source, "r");
+        reader = new MappedReader(source);
+        mapping = reader.map();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        StreamCopier.closeQuietly(randomAccessFile);
+        StreamCopier.closeQuietly(reader);
+        PickerFiles.deleteFile(source);
+        PickerFiles.deleteFile(directory);
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        long sum = 0;
+        for (long offset : offsets) {
+            switch (strategy) {
+                case SEEK:
+                    randomAccessFile.seek(offset);
+                    sum += randomAccessFile.readLong();
+                    break;
+                case POSITIONAL:
+                    field.clear();
+                    reader.readFully(offset, field);
+                    sum += field.getLong(0);
+                    break;
+                case MAPPED:
+                    sum += mapping.getLong((int) offset);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown strategy " + strategy);
+            }
+        }
+        return sum;
+    }
+}
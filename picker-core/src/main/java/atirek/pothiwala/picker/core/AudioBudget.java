@@ -0,0 +1,69 @@
+package atirek.pothiwala.picker.core;
+
+//Codec and rates that keep a recording of known length within a byte budget
+public class AudioBudget {
+
+    public enum Codec {
+        AMR_NB, AMR_WB, AAC_LC, HE_AAC, OPUS
+    }
+
+    private static final int[] AMR_NB_BIT_RATES = {4750, 5150, 5900, 6700, 7400, 7950, 10200, 12200};
+    private static final int[] AMR_WB_BIT_RATES = {6600, 8850, 12650, 14250, 15850, 18250, 19850, 23050, 23850};
+    //Container headers and index, kept out of the budget
+    private static final double OVERHEAD = 0.95;
+
+    private final Codec codec;
+    private final int sampleRate;
+    private final int bitRate;
+
+    private AudioBudget(Codec codec, int sampleRate, int bitRate) {
+        this.codec = codec;
+        this.sampleRate = sampleRate;
+        this.bitRate = bitRate;
+    }
+
+    //Best quality whose bit rate keeps totalSeconds of audio within maxBytes, Opus only where the device has it
+    public static AudioBudget fit(int totalSeconds, long maxBytes, boolean isOpusSupported) {
+        if (totalSeconds <= 0 || maxBytes <= 0) {
+            return new AudioBudget(Codec.AAC_LC, 44100, 64000);
+        }
+        long bitRate = (long) (maxBytes * 8 * OVERHEAD / totalSeconds);
+        if (bitRate >= 64000) {
+            return new AudioBudget(Codec.AAC_LC, 44100, (int) Math.min(bitRate, 128000));
+        }
+        if (bitRate >= 24000) {
+            //Opus holds up better than HE-AAC at these rates
+            return isOpusSupported ? new AudioBudget(Codec.OPUS, 48000, (int) bitRate) : new AudioBudget(Codec.HE_AAC, 44100, (int) bitRate);
+        }
+        if (bitRate >= 12000 && isOpusSupported) {
+            return new AudioBudget(Codec.OPUS, 48000, (int) bitRate);
+        }
+        if (bitRate >= AMR_WB_BIT_RATES[0]) {
+            return new AudioBudget(Codec.AMR_WB, 16000, highestBelow(AMR_WB_BIT_RATES, bitRate));
+        }
+        //The lowest AMR rate is the floor, a budget under it cannot be met
+        return new AudioBudget(Codec.AMR_NB, 8000, highestBelow(AMR_NB_BIT_RATES, bitRate));
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    private static int highestBelow(int[] bitRates, long bitRate) {
+        int chosen = bitRates[0];
+        for (int candidate : bitRates) {
+            if (candidate <= bitRate) {
+                chosen = candidate;
+            }
+        }
+        return chosen;
+    }
+}
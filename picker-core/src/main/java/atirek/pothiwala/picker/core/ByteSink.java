@@ -0,0 +1,15 @@
+package atirek.pothiwala.picker.core;
+
+import java.io.IOException;
+
+//Receives the bytes of a copy in order, while they pass through the copy buffer
+public interface ByteSink {
+
+    void update(byte[] buffer, int offset, int length) throws IOException;
+
+    //Called once after the last byte
+    void finish() throws IOException;
+
+    //Called instead of finish when the copy fails or is canceled
+    void abort();
+}
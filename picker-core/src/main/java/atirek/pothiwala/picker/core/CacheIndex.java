@@ -0,0 +1,295 @@
+package atirek.pothiwala.picker.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//LRU index of the picker folder, persisted next to the files it describes
+public class CacheIndex {
+
+    public static class Entry {
+        private final String name;
+        private long size;
+        private long lastAccess;
+        private String source;
+
+        private Entry(String name, long size, long lastAccess, String source) {
+            this.name = name;
+            this.size = size;
+            this.lastAccess = lastAccess;
+            this.source = source;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        public String getSource() {
+            return source;
+        }
+    }
+
+    public static final String INDEX_FILE = ".cache_index";
+    private static final int INDEX_VERSION = 1;
+
+    private final File directory;
+    private final File indexFile;
+    //Access ordered, the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> pins = new HashMap<>();
+    private long quotaBytes = 0;
+    private long usedBytes = 0;
+    private boolean isLoaded = false;
+
+    public CacheIndex(File directory) {
+        this.directory = directory;
+        this.indexFile = new File(directory, INDEX_FILE);
+    }
+
+    public synchronized void setQuota(long quotaBytes) {
+        this.quotaBytes = quotaBytes;
+        trim();
+    }
+
+    public synchronized long getQuota() {
+        return quotaBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        load();
+        return usedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        load();
+        return entries.size();
+    }
+
+    public synchronized List<Entry> getEntries() {
+        load();
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized boolean contains(File file) {
+        load();
+        return isIndexed(file) && entries.containsKey(file.getName());
+    }
+
+    public synchronized void register(File file, String source) {
+        if (!isIndexed(file)) {
+            return;
+        }
+        load();
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(file.getName());
+        if (entry == null) {
+            entry = new Entry(file.getName(), file.length(), now, source);
+            entries.put(entry.name, entry);
+        } else {
+            usedBytes -= entry.size;
+            entry.size = file.length();
+            entry.lastAccess = now;
+            if (source != null) {
+                entry.source = source;
+            }
+        }
+        usedBytes += entry.size;
+        if (!trim()) {
+            save();
+        }
+    }
+
+    public synchronized void touch(File file) {
+        load();
+        Entry entry = entries.get(file.getName());
+        if (entry != null && isIndexed(file)) {
+            entry.lastAccess = System.currentTimeMillis();
+            save();
+        }
+    }
+
+    public synchronized void remove(File file) {
+        load();
+        Entry entry = entries.remove(file.getName());
+        if (entry != null && isIndexed(file)) {
+            usedBytes -= entry.size;
+            PickerFiles.deleteFile(file);
+            onEvicted(file);
+            save();
+        }
+    }
+
+    public synchronized void pin(File file) {
+        Integer count = pins.get(file.getName());
+        pins.put(file.getName(), count == null ? 1 : count + 1);
+    }
+
+    public synchronized void unpin(File file) {
+        Integer count = pins.get(file.getName());
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            pins.remove(file.getName());
+            trim();
+        } else {
+            pins.put(file.getName(), count - 1);
+        }
+    }
+
+    public synchronized boolean isPinned(File file) {
+        return pins.containsKey(file.getName());
+    }
+
+    public synchronized boolean trim() {
+        load();
+        if (quotaBytes <= 0 || usedBytes <= quotaBytes) {
+            return false;
+        }
+
+        boolean isChanged = false;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes > quotaBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (pins.containsKey(entry.name)) {
+                continue;
+            }
+            File file = new File(directory, entry.name);
+            PickerFiles.deleteFile(file);
+            onEvicted(file);
+            usedBytes -= entry.size;
+            iterator.remove();
+            isChanged = true;
+        }
+        if (isChanged) {
+            save();
+        }
+        return isChanged;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+        isLoaded = true;
+        PickerFiles.deleteFile(indexFile);
+    }
+
+    //Called after an indexed file is deleted, for anything stored alongside it
+    protected void onEvicted(File file) {
+    }
+
+    private boolean isIndexed(File file) {
+        return directory.equals(file.getParentFile()) && PickerFiles.isPickedFile(file.getName());
+    }
+
+    private void load() {
+        if (isLoaded) {
+            return;
+        }
+        isLoaded = true;
+        if (indexFile.exists()) {
+            readIndex();
+        } else {
+            //No index yet, seed it once from whatever an earlier version left behind
+            List<Entry> seeded = new ArrayList<>();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile() && isIndexed(file)) {
+                        seeded.add(new Entry(file.getName(), file.length(), file.lastModified(), null));
+                    }
+                }
+            }
+            Collections.sort(seeded, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry first, Entry second) {
+                    return first.lastAccess < second.lastAccess ? -1 : (first.lastAccess == second.lastAccess ? 0 : 1);
+                }
+            });
+            for (Entry entry : seeded) {
+                entries.put(entry.name, entry);
+                usedBytes += entry.size;
+            }
+            save();
+        }
+    }
+
+    private void readIndex() {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (input.readInt() != INDEX_VERSION) {
+                return;
+            }
+            int count = input.readInt();
+            List<Entry> loaded = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = input.readUTF();
+                long size = input.readLong();
+                long lastAccess = input.readLong();
+                String source = input.readBoolean() ? input.readUTF() : null;
+                loaded.add(new Entry(name, size, lastAccess, source));
+            }
+            //The file is written in access order, eldest first
+            for (Entry entry : loaded) {
+                entries.put(entry.name, entry);
+                usedBytes += entry.size;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            entries.clear();
+            usedBytes = 0;
+        } finally {
+            StreamCopier.closeQuietly(input);
+        }
+    }
+
+    private void save() {
+        File temporary = new File(directory, INDEX_FILE + PickerFiles.TEMPORARY_SUFFIX);
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            output.writeInt(INDEX_VERSION);
+            output.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                output.writeUTF(entry.name);
+                output.writeLong(entry.size);
+                output.writeLong(entry.lastAccess);
+                output.writeBoolean(entry.source != null);
+                if (entry.source != null) {
+                    output.writeUTF(entry.source);
+                }
+            }
+            output.close();
+            output = null;
+            if (!temporary.renameTo(indexFile)) {
+                PickerFiles.deleteFile(temporary);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            StreamCopier.closeQuietly(output);
+        }
+    }
+}
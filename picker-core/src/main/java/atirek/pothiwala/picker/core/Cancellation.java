@@ -0,0 +1,7 @@
+package atirek.pothiwala.picker.core;
+
+//Checked between buffers, implementations throw an unchecked exception to stop the copy
+public interface Cancellation {
+
+    void throwIfCanceled();
+}
@@ -0,0 +1,223 @@
+package atirek.pothiwala.picker.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+//Names content by its leading bytes, so the extension does not depend on what the provider claims
+public class ContentSniffer {
+
+    public static final int HEADER_SIZE = 32;
+
+    public static class Signature {
+        private final byte[] prefix;
+        private final int secondOffset;
+        private final byte[] second;
+        private final String extension;
+        private final boolean isConclusive;
+
+        private Signature(byte[] prefix, int secondOffset, byte[] second, String extension, boolean isConclusive) {
+            this.prefix = prefix;
+            this.secondOffset = secondOffset;
+            this.second = second;
+            this.extension = extension;
+            this.isConclusive = isConclusive;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getMimeType() {
+            return MimeTypes.getMimeType(extension);
+        }
+
+        //Containers shared by several formats (OLE2, ZIP, Matroska) only give a fallback guess
+        public boolean isConclusive() {
+            return isConclusive;
+        }
+
+        private boolean matches(byte[] header, int length) {
+            return startsWith(header, length, 0, prefix) && (second == null || startsWith(header, length, secondOffset, second));
+        }
+    }
+
+    //Collects the first bytes while they stream past during a copy
+    public static class Header implements ByteSink {
+
+        private final byte[] bytes = new byte[HEADER_SIZE];
+        private int length = 0;
+
+        @Override
+        public void update(byte[] buffer, int offset, int count) {
+            int copied = Math.min(count, bytes.length - length);
+            if (copied > 0) {
+                System.arraycopy(buffer, offset, bytes, length, copied);
+                length += copied;
+            }
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void abort() {
+        }
+
+        public void read(File file) throws IOException {
+            FileInputStream inputStream = new FileInputStream(file);
+            try {
+                int count;
+                while (length < bytes.length && (count = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+                    length += count;
+                }
+            } finally {
+                StreamCopier.closeQuietly(inputStream);
+            }
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public Signature match() {
+            return ContentSniffer.match(bytes, length);
+        }
+    }
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    //Signatures indexed by their first byte, so a lookup only compares the few that can match
+    private static final Signature[][] byFirstByte = new Signature[256][];
+    //ISO base media files start with a box size, the ftyp brand identifies the format
+    private static final List<Signature> ftypBrands = new ArrayList<>();
+    private static final byte[] FTYP = ascii("ftyp");
+    //Any other ISO base media brand, mp4 plays on the most players
+    private static final Signature isoMedia = new Signature(new byte[0], 4, FTYP, "mp4", false);
+
+    static {
+        List<Signature> prefixed = new ArrayList<>();
+        prefixed.add(bytes("jpg", true, 0xFF, 0xD8, 0xFF));
+        prefixed.add(bytes("png", true, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A));
+        prefixed.add(text("gif", true, "GIF87a"));
+        prefixed.add(text("gif", true, "GIF89a"));
+        prefixed.add(text("pdf", true, "%PDF-"));
+        prefixed.add(text("amr", true, "#!AMR\n"));
+        prefixed.add(text("awb", true, "#!AMR-WB\n"));
+        prefixed.add(text("mp3", true, "ID3"));
+        prefixed.add(bytes("mp3", true, 0xFF, 0xFB));
+        prefixed.add(bytes("mp3", true, 0xFF, 0xF3));
+        prefixed.add(bytes("mp3", true, 0xFF, 0xF2));
+        prefixed.add(bytes("aac", true, 0xFF, 0xF1));
+        prefixed.add(bytes("aac", true, 0xFF, 0xF9));
+        prefixed.add(text("ogg", true, "OggS"));
+        prefixed.add(text("flac", true, "fLaC"));
+        prefixed.add(riff("wav", "WAVE"));
+        prefixed.add(riff("webp", "WEBP"));
+        prefixed.add(riff("avi", "AVI "));
+        prefixed.add(text("rtf", true, "{\\rtf"));
+        prefixed.add(bytes("doc", false, 0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1));
+        prefixed.add(bytes("zip", false, 'P', 'K', 0x03, 0x04));
+        prefixed.add(bytes("mkv", false, 0x1A, 0x45, 0xDF, 0xA3));
+
+        List<List<Signature>> buckets = new ArrayList<>(256);
+        for (int i = 0; i < 256; i++) {
+            buckets.add(null);
+        }
+        for (Signature signature : prefixed) {
+            int first = signature.prefix[0] & 0xFF;
+            if (buckets.get(first) == null) {
+                buckets.set(first, new ArrayList<Signature>());
+            }
+            buckets.get(first).add(signature);
+        }
+        for (int i = 0; i < 256; i++) {
+            List<Signature> bucket = buckets.get(i);
+            if (bucket != null) {
+                byFirstByte[i] = bucket.toArray(new Signature[bucket.size()]);
+            }
+        }
+
+        for (String brand : new String[]{"heic", "heix", "hevc", "hevx", "mif1", "msf1"}) {
+            ftypBrands.add(ftyp("heic", brand));
+        }
+        for (String brand : new String[]{"3gp4", "3gp5", "3gp6", "3gp7", "3gs7", "3ge6", "3gg6"}) {
+            ftypBrands.add(ftyp("3gp", brand));
+        }
+        ftypBrands.add(ftyp("m4a", "M4A "));
+        ftypBrands.add(ftyp("m4a", "M4B "));
+        ftypBrands.add(ftyp("mov", "qt  "));
+        for (String brand : new String[]{"isom", "iso2", "mp41", "mp42", "avc1", "dash", "M4V ", "MSNV"}) {
+            ftypBrands.add(ftyp("mp4", brand));
+        }
+    }
+
+    public static Signature match(byte[] header, int length) {
+        if (length <= 0) {
+            return null;
+        }
+        if (startsWith(header, length, 4, FTYP)) {
+            for (Signature signature : ftypBrands) {
+                if (signature.matches(header, length)) {
+                    return signature;
+                }
+            }
+            return isoMedia;
+        }
+        Signature[] candidates = byFirstByte[header[0] & 0xFF];
+        if (candidates != null) {
+            for (Signature signature : candidates) {
+                if (signature.matches(header, length)) {
+                    return signature;
+                }
+            }
+        }
+        return null;
+    }
+
+    public static Signature match(File file) throws IOException {
+        Header header = new Header();
+        header.read(file);
+        return header.match();
+    }
+
+    private static boolean startsWith(byte[] header, int length, int offset, byte[] expected) {
+        if (offset + expected.length > length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (header[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Signature bytes(String extension, boolean isConclusive, int... values) {
+        byte[] prefix = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            prefix[i] = (byte) values[i];
+        }
+        return new Signature(prefix, 0, null, extension, isConclusive);
+    }
+
+    private static Signature text(String extension, boolean isConclusive, String prefix) {
+        return new Signature(ascii(prefix), 0, null, extension, isConclusive);
+    }
+
+    private static Signature riff(String extension, String form) {
+        return new Signature(ascii("RIFF"), 8, ascii(form), extension, true);
+    }
+
+    private static Signature ftyp(String extension, String brand) {
+        return new Signature(new byte[0], 8, ascii(brand), extension, true);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(ASCII);
+    }
+}
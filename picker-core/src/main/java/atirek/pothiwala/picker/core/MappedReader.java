@@ -0,0 +1,117 @@
+package atirek.pothiwala.picker.core;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//Random access to a picked file through one shared channel, safe to use from several threads at once
+public class MappedReader implements Closeable {
+
+    //Small enough to map on 32-bit devices, where address space runs out long before 2 GB
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+    //Each window runs this far into the next one, so a record across a boundary is whole in one of them
+    public static final int DEFAULT_WINDOW_OVERLAP = 64 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final int windowOverlap;
+    private MappedByteBuffer mapping;
+
+    public MappedReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedReader(File file, int windowSize) throws IOException {
+        this(file, windowSize, DEFAULT_WINDOW_OVERLAP);
+    }
+
+    public MappedReader(File file, int windowSize, int windowOverlap) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        if (windowOverlap < 0 || (long) windowSize + windowOverlap > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Window overlap must not be negative and must fit into one mapping with the window");
+        }
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.windowOverlap = windowOverlap;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    //Positional reads leave the channel position alone, so readers never step on each other
+    public int read(long offset, ByteBuffer target) throws IOException {
+        return channel.read(target, offset);
+    }
+
+    public void readFully(long offset, ByteBuffer target) throws IOException {
+        long position = offset;
+        while (target.hasRemaining()) {
+            int count = channel.read(target, position);
+            if (count == -1) {
+                throw new EOFException("File ends at " + size + ", needed " + (position + target.remaining()));
+            }
+            position += count;
+        }
+    }
+
+    //The whole file, mapped once; every caller gets its own position over the same pages
+    public ByteBuffer map() throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File is " + size + " bytes, too large for one mapping, use the windows instead");
+        }
+        synchronized (this) {
+            if (mapping == null) {
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+        return mapping.duplicate();
+    }
+
+    public ByteBuffer map(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IndexOutOfBoundsException("Mapping " + offset + "+" + length + " is outside of " + size);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    public int getWindowOverlap() {
+        return windowOverlap;
+    }
+
+    //The last window reaches the end of the file, its overlap included
+    public int getWindowCount() {
+        if (size == 0) {
+            return 0;
+        }
+        long remaining = size - windowOverlap;
+        return (int) Math.max(1, (remaining + windowSize - 1) / windowSize);
+    }
+
+    public long getWindowOffset(int index) {
+        return (long) index * windowSize;
+    }
+
+    //Windows are not kept, a large file would pin all of its pages otherwise
+    public ByteBuffer getWindow(int index) throws IOException {
+        long offset = getWindowOffset(index);
+        return map(offset, (int) Math.min((long) windowSize + windowOverlap, size - offset));
+    }
+
+    @Override
+    public void close() throws IOException {
+        //Mappings stay valid after the channel closes, until they are collected
+        file.close();
+    }
+}
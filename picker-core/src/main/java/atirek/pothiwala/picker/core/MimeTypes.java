@@ -0,0 +1,100 @@
+package atirek.pothiwala.picker.core;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//The types the picker deals with; callers fall back to the platform table for anything else
+public class MimeTypes {
+
+    private static final Map<String, String> extensionToMime = new HashMap<>();
+    private static final Map<String, String> mimeToExtension = new HashMap<>();
+
+    static {
+        //The first extension listed for a type is the one used for new files
+        add("image/jpeg", "jpg", "jpeg", "jpe");
+        add("image/png", "png");
+        add("image/gif", "gif");
+        add("image/webp", "webp");
+        add("image/bmp", "bmp");
+        add("image/heic", "heic");
+        add("image/heif", "heif");
+        add("video/mp4", "mp4", "m4v");
+        add("video/3gpp", "3gp", "3gpp");
+        add("video/webm", "webm");
+        add("video/x-matroska", "mkv");
+        add("video/quicktime", "mov");
+        add("video/x-msvideo", "avi");
+        add("audio/mpeg", "mp3");
+        add("audio/mp4", "m4a");
+        add("audio/aac", "aac");
+        add("audio/amr", "amr");
+        add("audio/amr-wb", "awb");
+        add("audio/3gpp", "3ga");
+        add("audio/ogg", "ogg", "oga", "opus");
+        add("audio/x-wav", "wav");
+        add("audio/flac", "flac");
+        add("application/pdf", "pdf");
+        add("application/rtf", "rtf");
+        add("application/zip", "zip");
+        add("application/msword", "doc");
+        add("application/vnd.openxmlformats-officedocument.wordprocessingml.document", "docx");
+        add("application/vnd.ms-excel", "xls");
+        add("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+        add("application/vnd.ms-powerpoint", "ppt");
+        add("application/vnd.openxmlformats-officedocument.presentationml.presentation", "pptx");
+        add("text/plain", "txt");
+        add("text/csv", "csv");
+        add("text/html", "html", "htm");
+        add("application/json", "json");
+    }
+
+    private static void add(String mimeType, String... extensions) {
+        mimeToExtension.put(mimeType, extensions[0]);
+        for (String extension : extensions) {
+            if (!extensionToMime.containsKey(extension)) {
+                extensionToMime.put(extension, mimeType);
+            }
+        }
+    }
+
+    public static String getExtension(String mimeType) {
+        if (mimeType == null) {
+            return null;
+        }
+        int parameters = mimeType.indexOf(';');
+        if (parameters != -1) {
+            mimeType = mimeType.substring(0, parameters);
+        }
+        return mimeToExtension.get(mimeType.trim().toLowerCase(Locale.US));
+    }
+
+    public static String getMimeType(String extension) {
+        if (extension == null) {
+            return null;
+        }
+        return extensionToMime.get(extension.toLowerCase(Locale.US));
+    }
+
+    //Extension of the last path segment, ignoring any query or fragment
+    public static String getExtensionFromPath(String path) {
+        if (path == null) {
+            return null;
+        }
+        int end = path.length();
+        int fragment = path.indexOf('#');
+        if (fragment != -1) {
+            end = fragment;
+        }
+        int query = path.indexOf('?');
+        if (query != -1 && query < end) {
+            end = query;
+        }
+        int slash = path.lastIndexOf('/', end - 1);
+        int dot = path.lastIndexOf('.', end - 1);
+        if (dot <= slash + 1 || dot == end - 1) {
+            return null;
+        }
+        return path.substring(dot + 1, end).toLowerCase(Locale.US);
+    }
+}
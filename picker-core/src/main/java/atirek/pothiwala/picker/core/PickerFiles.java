@@ -0,0 +1,63 @@
+package atirek.pothiwala.picker.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+//Naming rules of the picker folder; dot-prefixed and temporary files are bookkeeping, not picks
+public class PickerFiles {
+
+    public static final String PARTIAL_SUFFIX = ".part";
+    public static final String TEMPORARY_SUFFIX = ".tmp";
+
+    public static File directory(File parent, String folderName) {
+        File directory = new File(parent, folderName);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return directory;
+    }
+
+    //Without a known extension the name has none, rather than ending in ".null"
+    public static String newFileName(String extension) {
+        return UUID.randomUUID().toString() + toSuffix(extension);
+    }
+
+    public static File newFile(File directory, String extension) throws IOException {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return File.createTempFile(UUID.randomUUID().toString(), toSuffix(extension), directory);
+    }
+
+    private static String toSuffix(String extension) {
+        return extension == null || extension.isEmpty() ? "" : "." + extension;
+    }
+
+    public static File newTemporaryFile(File directory) {
+        return new File(directory, UUID.randomUUID().toString() + TEMPORARY_SUFFIX);
+    }
+
+    //Sibling that receives the bytes until they are complete and renamed over the target
+    public static File partialFile(File target) {
+        return new File(target.getParentFile(), target.getName() + PARTIAL_SUFFIX);
+    }
+
+    public static boolean isHidden(String name) {
+        return name.startsWith(".");
+    }
+
+    public static boolean isTemporary(String name) {
+        return name.endsWith(PARTIAL_SUFFIX) || name.endsWith(TEMPORARY_SUFFIX);
+    }
+
+    public static boolean isPickedFile(String name) {
+        return !isHidden(name) && !isTemporary(name);
+    }
+
+    public static void deleteFile(File file) {
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package atirek.pothiwala.picker.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Lock-free for exactly one writer thread and one reader thread
+public class ShortRingBuffer {
+
+    private final short[] buffer;
+    private final int mask;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+    private final AtomicLong droppedSamples = new AtomicLong();
+    private final AtomicLong overrunCount = new AtomicLong();
+
+    public ShortRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.buffer = new short[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int available() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+
+    public long getOverrunCount() {
+        return overrunCount.get();
+    }
+
+    //Writer side; samples that do not fit are dropped and counted, never overwrite unread data
+    public int write(short[] source, int offset, int length) {
+        long write = writePosition.get();
+        int free = buffer.length - (int) (write - readPosition.get());
+        int count = Math.min(free, length);
+        if (count < length) {
+            droppedSamples.addAndGet(length - count);
+            overrunCount.incrementAndGet();
+        }
+        if (count <= 0) {
+            return 0;
+        }
+
+        int start = (int) (write & mask);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(source, offset, buffer, start, first);
+        if (count > first) {
+            System.arraycopy(source, offset + first, buffer, 0, count - first);
+        }
+        writePosition.lazySet(write + count);
+        return count;
+    }
+
+    //Reader side
+    public int read(short[] target, int offset, int length) {
+        long read = readPosition.get();
+        int count = Math.min((int) (writePosition.get() - read), length);
+        if (count <= 0) {
+            return 0;
+        }
+
+        int start = (int) (read & mask);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(buffer, start, target, offset, first);
+        if (count > first) {
+            System.arraycopy(buffer, 0, target, offset + first, count - first);
+        }
+        readPosition.lazySet(read + count);
+        return count;
+    }
+}
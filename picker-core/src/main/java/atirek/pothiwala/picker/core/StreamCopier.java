@@ -0,0 +1,218 @@
+package atirek.pothiwala.picker.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+
+public class StreamCopier {
+
+    public static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MIN_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 4;
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+
+    private static final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+
+    //Zero-copy when nothing has to see the bytes, pooled heap buffers otherwise
+    public static long copy(FileChannel source, FileChannel target, Cancellation cancellation, List<? extends ByteSink> sinks) throws IOException {
+        return copy(source, target, cancellation, sinks, -1);
+    }
+
+    //expectedLength sizes the buffer when known, -1 otherwise
+    public static long copy(FileChannel source, FileChannel target, Cancellation cancellation, List<? extends ByteSink> sinks,
+                            long expectedLength) throws IOException {
+        long copied = 0;
+        if (sinks == null || sinks.isEmpty()) {
+            copied = transfer(source, target, cancellation);
+        }
+
+        ByteBuffer buffer = obtainBuffer(expectedLength >= 0 ? expectedLength - copied : -1);
+        try {
+            //Picks up whatever transferTo left, or everything from a pipe without a size
+            copied += copy(source, target, buffer, cancellation, sinks);
+        } finally {
+            recycleBuffer(buffer);
+        }
+        return copied;
+    }
+
+    public static long copy(InputStream source, FileChannel target, Cancellation cancellation, List<? extends ByteSink> sinks) throws IOException {
+        return copy(source, target, cancellation, sinks, -1);
+    }
+
+    public static long copy(InputStream source, FileChannel target, Cancellation cancellation, List<? extends ByteSink> sinks,
+                            long expectedLength) throws IOException {
+        long copied = 0;
+        ByteBuffer buffer = obtainBuffer(expectedLength);
+        try {
+            byte[] array = buffer.array();
+            int length;
+            while ((length = source.read(array, 0, array.length)) != -1) {
+                throwIfCanceled(cancellation);
+                update(sinks, array, length);
+                buffer.limit(length);
+                while (buffer.hasRemaining()) {
+                    copied += target.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            recycleBuffer(buffer);
+        }
+        return copied;
+    }
+
+    //Leaves the source positioned after the transferred bytes
+    public static long transfer(FileChannel source, FileChannel target, Cancellation cancellation) throws IOException {
+        long size;
+        try {
+            size = source.size();
+        } catch (IOException e) {
+            //Pipes and sockets have no size, the buffered copy reads them until the end instead
+            return 0;
+        }
+
+        long start = source.position();
+        long copied = 0;
+        while (start + copied < size) {
+            throwIfCanceled(cancellation);
+            long count = source.transferTo(start + copied, Math.min(TRANSFER_CHUNK, size - start - copied), target);
+            if (count <= 0) {
+                break;
+            }
+            copied += count;
+        }
+        source.position(start + copied);
+        return copied;
+    }
+
+    //Sinks need the bytes in an array, so they only work with heap buffers
+    public static long copy(ReadableByteChannel source, WritableByteChannel target, ByteBuffer buffer,
+                            Cancellation cancellation, List<? extends ByteSink> sinks) throws IOException {
+        if (sinks != null && !sinks.isEmpty() && !buffer.hasArray()) {
+            throw new IllegalArgumentException("Byte sinks need a heap buffer");
+        }
+        long copied = 0;
+        buffer.clear();
+        while (source.read(buffer) != -1) {
+            throwIfCanceled(cancellation);
+            buffer.flip();
+            if (sinks != null && !sinks.isEmpty()) {
+                update(sinks, buffer.array(), buffer.arrayOffset(), buffer.limit());
+            }
+            while (buffer.hasRemaining()) {
+                copied += target.write(buffer);
+            }
+            buffer.clear();
+        }
+        return copied;
+    }
+
+    //Feeds an existing file to the sinks without copying it
+    public static long drain(File source, List<? extends ByteSink> sinks, Cancellation cancellation) throws IOException {
+        if (sinks == null || sinks.isEmpty()) {
+            return source.length();
+        }
+        FileInputStream inputStream = null;
+        boolean isFinished = false;
+        ByteBuffer buffer = obtainBuffer(source.length());
+        try {
+            inputStream = new FileInputStream(source);
+            byte[] array = buffer.array();
+            long length = 0;
+            int count;
+            while ((count = inputStream.read(array, 0, array.length)) != -1) {
+                throwIfCanceled(cancellation);
+                update(sinks, array, count);
+                length += count;
+            }
+            finish(sinks);
+            isFinished = true;
+            return length;
+        } finally {
+            recycleBuffer(buffer);
+            closeQuietly(inputStream);
+            if (!isFinished) {
+                abort(sinks);
+            }
+        }
+    }
+
+    public static void finish(List<? extends ByteSink> sinks) throws IOException {
+        if (sinks != null) {
+            for (ByteSink sink : sinks) {
+                sink.finish();
+            }
+        }
+    }
+
+    public static void abort(List<? extends ByteSink> sinks) {
+        if (sinks != null) {
+            for (ByteSink sink : sinks) {
+                sink.abort();
+            }
+        }
+    }
+
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void update(List<? extends ByteSink> sinks, byte[] buffer, int length) throws IOException {
+        update(sinks, buffer, 0, length);
+    }
+
+    private static void update(List<? extends ByteSink> sinks, byte[] buffer, int offset, int length) throws IOException {
+        if (sinks != null) {
+            for (int i = 0; i < sinks.size(); i++) {
+                sinks.get(i).update(buffer, offset, length);
+            }
+        }
+    }
+
+    private static void throwIfCanceled(Cancellation cancellation) {
+        if (cancellation != null) {
+            cancellation.throwIfCanceled();
+        }
+    }
+
+    private static ByteBuffer obtainBuffer(long expectedLength) {
+        synchronized (bufferPool) {
+            ByteBuffer buffer = bufferPool.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        if (expectedLength >= 0 && expectedLength < BUFFER_SIZE) {
+            //One byte past the known length so the end shows up in the same read, too small to be pooled
+            return ByteBuffer.allocate((int) Math.max(MIN_BUFFER_SIZE, expectedLength + 1));
+        }
+        return ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    private static void recycleBuffer(ByteBuffer buffer) {
+        if (buffer.capacity() != BUFFER_SIZE) {
+            return;
+        }
+        buffer.clear();
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+                bufferPool.offer(buffer);
+            }
+        }
+    }
+}
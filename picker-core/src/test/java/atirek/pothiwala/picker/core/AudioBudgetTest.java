@@ -0,0 +1,61 @@
+package atirek.pothiwala.picker.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AudioBudgetTest {
+
+    @Test
+    public void fit_withoutABudget_usesAac() {
+        AudioBudget budget = AudioBudget.fit(0, 1000000, true);
+        assertEquals(AudioBudget.Codec.AAC_LC, budget.getCodec());
+        assertEquals(64000, budget.getBitRate());
+        assertEquals(AudioBudget.Codec.AAC_LC, AudioBudget.fit(60, 0, true).getCodec());
+    }
+
+    @Test
+    public void fit_capsAacAtItsTopRate() {
+        AudioBudget budget = AudioBudget.fit(10, 100000000, false);
+        assertEquals(AudioBudget.Codec.AAC_LC, budget.getCodec());
+        assertEquals(128000, budget.getBitRate());
+    }
+
+    @Test
+    public void fit_staysWithinTheBudget() {
+        int seconds = 60;
+        long maxBytes = 600000;
+        AudioBudget budget = AudioBudget.fit(seconds, maxBytes, false);
+        assertEquals(AudioBudget.Codec.AAC_LC, budget.getCodec());
+        assertTrue((long) budget.getBitRate() * seconds / 8 <= maxBytes);
+    }
+
+    @Test
+    public void fit_prefersOpusWhereSupported() {
+        //About 32 kbps
+        assertEquals(AudioBudget.Codec.OPUS, AudioBudget.fit(60, 252632, true).getCodec());
+        assertEquals(AudioBudget.Codec.HE_AAC, AudioBudget.fit(60, 252632, false).getCodec());
+        //About 16 kbps, only Opus still beats AMR there
+        assertEquals(AudioBudget.Codec.OPUS, AudioBudget.fit(60, 126316, true).getCodec());
+        assertEquals(AudioBudget.Codec.AMR_WB, AudioBudget.fit(60, 126316, false).getCodec());
+    }
+
+    @Test
+    public void fit_picksTheHighestAmrRateBelowTheBudget() {
+        AudioBudget wideband = AudioBudget.fit(60, 126316, false);
+        assertEquals(16000, wideband.getSampleRate());
+        assertEquals(15850, wideband.getBitRate());
+
+        AudioBudget narrowband = AudioBudget.fit(60, 47369, false);
+        assertEquals(AudioBudget.Codec.AMR_NB, narrowband.getCodec());
+        assertEquals(8000, narrowband.getSampleRate());
+        assertEquals(5900, narrowband.getBitRate());
+    }
+
+    @Test
+    public void fit_fallsToTheLowestAmrRate() {
+        AudioBudget budget = AudioBudget.fit(3600, 1000, true);
+        assertEquals(AudioBudget.Codec.AMR_NB, budget.getCodec());
+        assertEquals(4750, budget.getBitRate());
+    }
+}
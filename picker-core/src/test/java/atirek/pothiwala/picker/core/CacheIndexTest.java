@@ -0,0 +1,163 @@
+package atirek.pothiwala.picker.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CacheIndexTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache-index").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                PickerFiles.deleteFile(file);
+            }
+        }
+        PickerFiles.deleteFile(directory);
+    }
+
+    @Test
+    public void trim_evictsTheLeastRecentlyUsedFirst() throws IOException {
+        CacheIndex index = new CacheIndex(directory);
+        File first = create("first.jpg", 100);
+        File second = create("second.jpg", 100);
+        File third = create("third.jpg", 100);
+        index.register(first, "PHOTO_GALLERY");
+        index.register(second, "PHOTO_GALLERY");
+        index.register(third, "PHOTO_GALLERY");
+        index.touch(first);
+
+        index.setQuota(200);
+
+        assertTrue(first.exists());
+        assertFalse(second.exists());
+        assertTrue(third.exists());
+        assertEquals(200, index.getUsedBytes());
+        assertEquals(names("third.jpg", "first.jpg"), namesOf(index.getEntries()));
+    }
+
+    @Test
+    public void trim_skipsPinnedFilesUntilUnpinned() throws IOException {
+        CacheIndex index = new CacheIndex(directory);
+        File first = create("first.jpg", 100);
+        File second = create("second.jpg", 100);
+        index.register(first, null);
+        index.pin(first);
+        index.pin(first);
+        index.register(second, null);
+
+        index.setQuota(100);
+        assertTrue(first.exists());
+        assertFalse(second.exists());
+
+        index.unpin(first);
+        assertTrue(index.isPinned(first));
+        assertTrue(first.exists());
+
+        index.setQuota(50);
+        index.unpin(first);
+        assertFalse(index.isPinned(first));
+        assertFalse(first.exists());
+        assertEquals(0, index.getEntryCount());
+    }
+
+    @Test
+    public void register_ignoresFilesOutsideTheFolderAndBookkeeping() throws IOException {
+        CacheIndex index = new CacheIndex(directory);
+        index.register(create(".hidden", 10), null);
+        index.register(create("copy.jpg" + PickerFiles.PARTIAL_SUFFIX, 10), null);
+        index.register(new File(directory.getParentFile(), "elsewhere.jpg"), null);
+
+        assertEquals(0, index.getEntryCount());
+        assertEquals(0, index.getUsedBytes());
+    }
+
+    @Test
+    public void index_survivesAReload() throws IOException {
+        CacheIndex index = new CacheIndex(directory);
+        File first = create("first.jpg", 10);
+        File second = create("second.mp4", 20);
+        index.register(first, "PHOTO_GALLERY");
+        index.register(second, "VIDEO_GALLERY");
+        index.touch(first);
+
+        CacheIndex reloaded = new CacheIndex(directory);
+
+        assertEquals(30, reloaded.getUsedBytes());
+        List<CacheIndex.Entry> entries = reloaded.getEntries();
+        assertEquals(names("second.mp4", "first.jpg"), namesOf(entries));
+        assertEquals("VIDEO_GALLERY", entries.get(0).getSource());
+        assertEquals(20, entries.get(0).getSize());
+        assertTrue(reloaded.contains(first));
+    }
+
+    @Test
+    public void load_seedsFromExistingFilesByAge() throws IOException {
+        File older = create("older.jpg", 10);
+        File newer = create("newer.jpg", 10);
+        assertTrue(older.setLastModified(1000000L));
+        assertTrue(newer.setLastModified(2000000L));
+
+        CacheIndex index = new CacheIndex(directory);
+
+        assertEquals(names("older.jpg", "newer.jpg"), namesOf(index.getEntries()));
+        assertTrue(new File(directory, CacheIndex.INDEX_FILE).exists());
+    }
+
+    @Test
+    public void remove_deletesTheFileAndItsEntry() throws IOException {
+        CacheIndex index = new CacheIndex(directory);
+        File file = create("file.jpg", 10);
+        index.register(file, null);
+
+        index.remove(file);
+
+        assertFalse(file.exists());
+        assertFalse(index.contains(file));
+        assertEquals(0, new CacheIndex(directory).getEntryCount());
+    }
+
+    private File create(String name, int length) throws IOException {
+        File file = new File(directory, name);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(new byte[length]);
+        } finally {
+            StreamCopier.closeQuietly(outputStream);
+        }
+        return file;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<>();
+        for (String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+
+    private static List<String> namesOf(List<CacheIndex.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (CacheIndex.Entry entry : entries) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+}
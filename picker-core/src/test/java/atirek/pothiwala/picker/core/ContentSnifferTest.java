@@ -0,0 +1,136 @@
+package atirek.pothiwala.picker.core;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class ContentSnifferTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void match_knowsEachPrefix() {
+        assertConclusive("jpg", bytes(0xFF, 0xD8, 0xFF, 0xE0));
+        assertConclusive("png", bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A));
+        assertConclusive("gif", ascii("GIF87a"));
+        assertConclusive("gif", ascii("GIF89a"));
+        assertConclusive("pdf", ascii("%PDF-1.7"));
+        assertConclusive("amr", ascii("#!AMR\n"));
+        assertConclusive("awb", ascii("#!AMR-WB\n"));
+        assertConclusive("mp3", ascii("ID3\u0004"));
+        assertConclusive("mp3", bytes(0xFF, 0xFB, 0x90));
+        assertConclusive("mp3", bytes(0xFF, 0xF3, 0x90));
+        assertConclusive("mp3", bytes(0xFF, 0xF2, 0x90));
+        assertConclusive("aac", bytes(0xFF, 0xF1, 0x50));
+        assertConclusive("aac", bytes(0xFF, 0xF9, 0x50));
+        assertConclusive("ogg", ascii("OggS"));
+        assertConclusive("flac", ascii("fLaC"));
+        assertConclusive("wav", ascii("RIFF\0\0\0\0WAVE"));
+        assertConclusive("webp", ascii("RIFF\0\0\0\0WEBP"));
+        assertConclusive("avi", ascii("RIFF\0\0\0\0AVI "));
+        assertConclusive("rtf", ascii("{\\rtf1"));
+    }
+
+    @Test
+    public void match_onlyGuessesSharedContainers() {
+        assertGuess("doc", bytes(0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1));
+        assertGuess("zip", bytes('P', 'K', 0x03, 0x04));
+        assertGuess("mkv", bytes(0x1A, 0x45, 0xDF, 0xA3));
+    }
+
+    @Test
+    public void match_readsTheFtypBrand() {
+        assertConclusive("heic", ftyp("heic"));
+        assertConclusive("heic", ftyp("mif1"));
+        assertConclusive("3gp", ftyp("3gp4"));
+        assertConclusive("m4a", ftyp("M4A "));
+        assertConclusive("mov", ftyp("qt  "));
+        assertConclusive("mp4", ftyp("isom"));
+        assertConclusive("mp4", ftyp("mp42"));
+        //Unknown brands are still ISO base media
+        assertGuess("mp4", ftyp("abcd"));
+    }
+
+    @Test
+    public void match_needsTheWholeSignature() {
+        assertNull(ContentSniffer.match(new byte[0], 0));
+        assertNull(ContentSniffer.match(bytes(0xFF, 0xD8), 2));
+        assertNull(ContentSniffer.match(ascii("%PDF"), 4));
+        //RIFF without its form type
+        assertNull(ContentSniffer.match(ascii("RIFF\0\0\0\0WA"), 10));
+        //The brand is cut off, the box type alone only says ISO base media
+        assertGuess("mp4", ascii("\0\0\0\u0018ftyphe"));
+        assertNull(ContentSniffer.match(ascii("plain text"), 10));
+    }
+
+    @Test
+    public void match_ignoresBytesPastTheLength() {
+        byte[] header = bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A);
+        assertNull(ContentSniffer.match(header, 4));
+    }
+
+    @Test
+    public void header_keepsOnlyTheFirstBytes() {
+        ContentSniffer.Header header = new ContentSniffer.Header();
+        byte[] pdf = ascii("%PDF-1.4");
+        header.update(pdf, 0, 3);
+        header.update(pdf, 3, pdf.length - 3);
+        header.update(new byte[100], 0, 100);
+
+        assertEquals(ContentSniffer.HEADER_SIZE, header.getLength());
+        assertEquals("pdf", header.match().getExtension());
+    }
+
+    @Test
+    public void match_readsFiles() throws IOException {
+        File file = File.createTempFile("sniffer", null);
+        try {
+            FileOutputStream outputStream = new FileOutputStream(file);
+            try {
+                outputStream.write(ascii("OggS"));
+            } finally {
+                StreamCopier.closeQuietly(outputStream);
+            }
+            ContentSniffer.Signature signature = ContentSniffer.match(file);
+            assertEquals("ogg", signature.getExtension());
+            assertEquals("audio/ogg", signature.getMimeType());
+        } finally {
+            PickerFiles.deleteFile(file);
+        }
+    }
+
+    private static void assertConclusive(String extension, byte[] header) {
+        ContentSniffer.Signature signature = ContentSniffer.match(header, header.length);
+        assertNotNull("No match for " + extension, signature);
+        assertEquals(extension, signature.getExtension());
+        assertTrue(extension + " should be conclusive", signature.isConclusive());
+    }
+
+    private static void assertGuess(String extension, byte[] header) {
+        ContentSniffer.Signature signature = ContentSniffer.match(header, header.length);
+        assertNotNull("No match for " + extension, signature);
+        assertEquals(extension, signature.getExtension());
+        assertFalse(extension + " should only be a guess", signature.isConclusive());
+    }
+
+    private static byte[] ftyp(String brand) {
+        return ascii("\0\0\0\u0018ftyp" + brand + "\0\0\0\0");
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(ASCII);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
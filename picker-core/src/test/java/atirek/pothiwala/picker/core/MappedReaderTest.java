@@ -0,0 +1,147 @@
+package atirek.pothiwala.picker.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MappedReaderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("mapped-reader", null);
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            StreamCopier.closeQuietly(outputStream);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        PickerFiles.deleteFile(file);
+    }
+
+    @Test
+    public void readFully_readsAtTheOffset() throws IOException {
+        MappedReader reader = new MappedReader(file);
+        try {
+            ByteBuffer target = ByteBuffer.allocate(4);
+            reader.readFully(996, target);
+            assertEquals((byte) 996, target.get(0));
+            assertEquals((byte) 999, target.get(3));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void readFully_failsPastTheEnd() throws IOException {
+        MappedReader reader = new MappedReader(file);
+        try {
+            reader.readFully(998, ByteBuffer.allocate(4));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void read_returnsMinusOneAtTheEnd() throws IOException {
+        MappedReader reader = new MappedReader(file);
+        try {
+            assertEquals(-1, reader.read(1000, ByteBuffer.allocate(4)));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void windows_coverTheFile() throws IOException {
+        MappedReader reader = new MappedReader(file, 300, 50);
+        try {
+            assertEquals(4, reader.getWindowCount());
+            assertEquals(0, reader.getWindowOffset(0));
+            assertEquals(900, reader.getWindowOffset(3));
+            assertEquals(350, reader.getWindow(0).remaining());
+            ByteBuffer last = reader.getWindow(3);
+            assertEquals(100, last.remaining());
+            assertEquals((byte) 900, last.get(0));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void windows_overlapTheNextOne() throws IOException {
+        MappedReader reader = new MappedReader(file, 300, 50);
+        try {
+            //A record at 290..310 straddles the boundary but is whole in the first window
+            ByteBuffer first = reader.getWindow(0);
+            assertEquals((byte) 310, first.get(310));
+            assertEquals((byte) 300, reader.getWindow(1).get(0));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void windows_ofAnExactMultiple() throws IOException {
+        MappedReader reader = new MappedReader(file, 500, 0);
+        try {
+            assertEquals(2, reader.getWindowCount());
+            assertEquals(500, reader.getWindow(1).remaining());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void windows_skipOneTheOverlapAlreadyCovers() throws IOException {
+        MappedReader reader = new MappedReader(file, 450, 100);
+        try {
+            assertEquals(2, reader.getWindowCount());
+            assertEquals(550, reader.getWindow(1).remaining());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void map_sharesOneMappingWithSeparatePositions() throws IOException {
+        MappedReader reader = new MappedReader(file);
+        try {
+            ByteBuffer first = reader.map();
+            ByteBuffer second = reader.map();
+            first.position(10);
+            assertEquals(0, second.position());
+            assertEquals(1000, second.remaining());
+            assertEquals((byte) 10, first.get());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void map_rejectsRangesOutsideTheFile() throws IOException {
+        MappedReader reader = new MappedReader(file);
+        try {
+            reader.map(900, 200);
+        } finally {
+            reader.close();
+        }
+    }
+}
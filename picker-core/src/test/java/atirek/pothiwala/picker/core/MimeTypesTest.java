@@ -0,0 +1,42 @@
+package atirek.pothiwala.picker.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MimeTypesTest {
+
+    @Test
+    public void getExtension_usesTheFirstListedExtension() {
+        assertEquals("jpg", MimeTypes.getExtension("image/jpeg"));
+        assertEquals("mp4", MimeTypes.getExtension("video/mp4"));
+        assertEquals("ogg", MimeTypes.getExtension("audio/ogg"));
+    }
+
+    @Test
+    public void getExtension_ignoresCaseAndParameters() {
+        assertEquals("txt", MimeTypes.getExtension("Text/Plain; charset=UTF-8"));
+        assertNull(MimeTypes.getExtension("application/x-unknown"));
+        assertNull(MimeTypes.getExtension(null));
+    }
+
+    @Test
+    public void getMimeType_knowsEveryAlias() {
+        assertEquals("image/jpeg", MimeTypes.getMimeType("jpeg"));
+        assertEquals("image/jpeg", MimeTypes.getMimeType("JPG"));
+        assertEquals("audio/ogg", MimeTypes.getMimeType("opus"));
+        assertNull(MimeTypes.getMimeType("unknown"));
+        assertNull(MimeTypes.getMimeType(null));
+    }
+
+    @Test
+    public void getExtensionFromPath_readsTheLastSegment() {
+        assertEquals("jpg", MimeTypes.getExtensionFromPath("/storage/DCIM/photo.JPG"));
+        assertEquals("pdf", MimeTypes.getExtensionFromPath("https://example.com/files/report.pdf?download=1#page=2"));
+        assertEquals("gz", MimeTypes.getExtensionFromPath("archive.tar.gz"));
+        assertNull(MimeTypes.getExtensionFromPath("/storage/folder.d/file"));
+        assertNull(MimeTypes.getExtensionFromPath("/storage/.hidden"));
+        assertNull(MimeTypes.getExtensionFromPath("/storage/trailing."));
+        assertNull(MimeTypes.getExtensionFromPath(null));
+    }
+}
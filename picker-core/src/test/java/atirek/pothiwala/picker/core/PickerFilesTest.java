@@ -0,0 +1,59 @@
+package atirek.pothiwala.picker.core;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class PickerFilesTest {
+
+    @Test
+    public void newFileName_leavesOutAMissingExtension() {
+        assertTrue(PickerFiles.newFileName("jpg").endsWith(".jpg"));
+        assertFalse(PickerFiles.newFileName(null).contains("."));
+        assertFalse(PickerFiles.newFileName("").contains("."));
+        assertNotEquals(PickerFiles.newFileName("jpg"), PickerFiles.newFileName("jpg"));
+    }
+
+    @Test
+    public void newFile_createsItInTheDirectory() throws IOException {
+        File directory = Files.createTempDirectory("picker-files").toFile();
+        File nested = new File(directory, "nested");
+        try {
+            File file = PickerFiles.newFile(nested, "mp4");
+            assertTrue(file.isFile());
+            assertEquals(nested, file.getParentFile());
+            assertTrue(file.getName().endsWith(".mp4"));
+            assertTrue(PickerFiles.isPickedFile(file.getName()));
+            PickerFiles.deleteFile(file);
+        } finally {
+            PickerFiles.deleteFile(nested);
+            PickerFiles.deleteFile(directory);
+        }
+    }
+
+    @Test
+    public void bookkeepingNames_areNotPicks() {
+        File directory = new File("picker");
+        File temporary = PickerFiles.newTemporaryFile(directory);
+        File partial = PickerFiles.partialFile(new File(directory, "photo.jpg"));
+
+        assertTrue(PickerFiles.isTemporary(temporary.getName()));
+        assertEquals("photo.jpg" + PickerFiles.PARTIAL_SUFFIX, partial.getName());
+        assertTrue(PickerFiles.isTemporary(partial.getName()));
+        assertTrue(PickerFiles.isHidden(CacheIndex.INDEX_FILE));
+
+        assertFalse(PickerFiles.isPickedFile(temporary.getName()));
+        assertFalse(PickerFiles.isPickedFile(partial.getName()));
+        assertFalse(PickerFiles.isPickedFile(CacheIndex.INDEX_FILE));
+        assertTrue(PickerFiles.isPickedFile("photo.jpg"));
+    }
+
+    @Test
+    public void deleteFile_ignoresMissingFiles() {
+        PickerFiles.deleteFile(new File("does-not-exist.jpg"));
+    }
+}
@@ -0,0 +1,55 @@
+package atirek.pothiwala.picker.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShortRingBufferTest {
+
+    @Test
+    public void capacity_isAPowerOfTwo() {
+        assertEquals(8, new ShortRingBuffer(5).capacity());
+        assertEquals(8, new ShortRingBuffer(8).capacity());
+        assertEquals(1024, new ShortRingBuffer(1000).capacity());
+    }
+
+    @Test
+    public void read_returnsWhatWasWritten() {
+        ShortRingBuffer buffer = new ShortRingBuffer(8);
+        assertEquals(3, buffer.write(new short[]{1, 2, 3}, 0, 3));
+        assertEquals(3, buffer.available());
+
+        short[] target = new short[4];
+        assertEquals(3, buffer.read(target, 0, 4));
+        assertArrayEquals(new short[]{1, 2, 3, 0}, target);
+        assertEquals(0, buffer.available());
+        assertEquals(0, buffer.read(target, 0, 4));
+    }
+
+    @Test
+    public void write_wrapsAroundTheEnd() {
+        ShortRingBuffer buffer = new ShortRingBuffer(8);
+        short[] target = new short[8];
+        buffer.write(new short[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        buffer.read(target, 0, 6);
+
+        assertEquals(5, buffer.write(new short[]{7, 8, 9, 10, 11}, 0, 5));
+        assertEquals(5, buffer.read(target, 1, 7));
+        assertArrayEquals(new short[]{1, 7, 8, 9, 10, 11, 0, 0}, target);
+    }
+
+    @Test
+    public void write_dropsWhatDoesNotFit() {
+        ShortRingBuffer buffer = new ShortRingBuffer(4);
+        assertEquals(3, buffer.write(new short[]{1, 2, 3}, 0, 3));
+        assertEquals(1, buffer.write(new short[]{4, 5, 6}, 0, 3));
+        assertEquals(0, buffer.write(new short[]{7}, 0, 1));
+
+        assertEquals(3, buffer.getDroppedSamples());
+        assertEquals(2, buffer.getOverrunCount());
+
+        short[] target = new short[4];
+        assertEquals(4, buffer.read(target, 0, 4));
+        assertArrayEquals(new short[]{1, 2, 3, 4}, target);
+    }
+}
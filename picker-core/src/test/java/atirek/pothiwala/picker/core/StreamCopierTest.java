@@ -0,0 +1,262 @@
+package atirek.pothiwala.picker.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamCopierTest {
+
+    private static class RecordingSink implements ByteSink {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int finishCount = 0;
+        private int abortCount = 0;
+
+        @Override
+        public void update(byte[] buffer, int offset, int length) {
+            bytes.write(buffer, offset, length);
+        }
+
+        @Override
+        public void finish() {
+            finishCount++;
+        }
+
+        @Override
+        public void abort() {
+            abortCount++;
+        }
+    }
+
+    private static class CancelAfter implements Cancellation {
+        private int remaining;
+
+        CancelAfter(int checks) {
+            this.remaining = checks;
+        }
+
+        @Override
+        public void throwIfCanceled() {
+            if (remaining-- <= 0) {
+                throw new IllegalStateException("canceled");
+            }
+        }
+    }
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("stream-copier").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                PickerFiles.deleteFile(file);
+            }
+        }
+        PickerFiles.deleteFile(directory);
+    }
+
+    @Test
+    public void copy_withoutSinks_copiesEverything() throws IOException {
+        byte[] content = randomBytes(StreamCopier.BUFFER_SIZE * 2 + 17);
+        File source = write("source.bin", content);
+        File target = new File(directory, "target.bin");
+
+        long copied = copyChannels(source, target, null, null);
+
+        assertEquals(content.length, copied);
+        assertArrayEquals(content, read(target));
+    }
+
+    @Test
+    public void copy_withSinks_feedsEveryByte() throws IOException {
+        byte[] content = randomBytes(StreamCopier.BUFFER_SIZE + 5);
+        File source = write("source.bin", content);
+        File target = new File(directory, "target.bin");
+        RecordingSink sink = new RecordingSink();
+
+        long copied = copyChannels(source, target, null, Collections.singletonList(sink));
+
+        assertEquals(content.length, copied);
+        assertArrayEquals(content, read(target));
+        assertArrayEquals(content, sink.bytes.toByteArray());
+    }
+
+    @Test
+    public void copy_withExpectedLength_copiesPastAWrongGuess() throws IOException {
+        byte[] content = randomBytes(100000);
+        File source = write("source.bin", content);
+        File target = new File(directory, "target.bin");
+        RecordingSink sink = new RecordingSink();
+
+        FileChannel input = new FileInputStream(source).getChannel();
+        FileChannel output = new FileOutputStream(target).getChannel();
+        try {
+            assertEquals(content.length, StreamCopier.copy(input, output, null, Collections.singletonList(sink), 10));
+        } finally {
+            StreamCopier.closeQuietly(input);
+            StreamCopier.closeQuietly(output);
+        }
+        assertArrayEquals(content, read(target));
+    }
+
+    @Test
+    public void copy_fromStream_feedsSinks() throws IOException {
+        byte[] content = randomBytes(70000);
+        File target = new File(directory, "target.bin");
+        RecordingSink sink = new RecordingSink();
+
+        FileChannel output = new FileOutputStream(target).getChannel();
+        try {
+            long copied = StreamCopier.copy(new ByteArrayInputStream(content), output, null, Collections.singletonList(sink), content.length);
+            assertEquals(content.length, copied);
+        } finally {
+            StreamCopier.closeQuietly(output);
+        }
+        assertArrayEquals(content, read(target));
+        assertArrayEquals(content, sink.bytes.toByteArray());
+    }
+
+    @Test
+    public void copy_fromStream_stopsWhenCanceled() throws IOException {
+        byte[] content = randomBytes(StreamCopier.BUFFER_SIZE * 3);
+        File target = new File(directory, "target.bin");
+
+        FileChannel output = new FileOutputStream(target).getChannel();
+        try {
+            StreamCopier.copy(new ByteArrayInputStream(content), output, new CancelAfter(1), null);
+            fail("Copy was not canceled");
+        } catch (IllegalStateException e) {
+            assertTrue(target.length() < content.length);
+        } finally {
+            StreamCopier.closeQuietly(output);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void copy_withoutSinks_stopsWhenCanceled() throws IOException {
+        File source = write("source.bin", randomBytes(1024));
+        copyChannels(source, new File(directory, "target.bin"), new CancelAfter(0), null);
+    }
+
+    @Test
+    public void drain_feedsSinksAndFinishes() throws IOException {
+        byte[] content = randomBytes(StreamCopier.BUFFER_SIZE + 1);
+        File source = write("source.bin", content);
+        RecordingSink sink = new RecordingSink();
+
+        assertEquals(content.length, StreamCopier.drain(source, Collections.singletonList(sink), null));
+        assertArrayEquals(content, sink.bytes.toByteArray());
+        assertEquals(1, sink.finishCount);
+        assertEquals(0, sink.abortCount);
+    }
+
+    @Test
+    public void drain_withoutSinks_onlyReportsTheLength() throws IOException {
+        File source = write("source.bin", randomBytes(1234));
+        assertEquals(1234, StreamCopier.drain(source, null, null));
+        assertEquals(1234, StreamCopier.drain(source, new ArrayList<ByteSink>(), null));
+    }
+
+    @Test
+    public void drain_abortsWhenCanceled() throws IOException {
+        File source = write("source.bin", randomBytes(1024));
+        RecordingSink sink = new RecordingSink();
+        try {
+            StreamCopier.drain(source, Collections.singletonList(sink), new CancelAfter(0));
+            fail("Drain was not canceled");
+        } catch (IllegalStateException e) {
+            assertEquals(0, sink.finishCount);
+            assertEquals(1, sink.abortCount);
+        }
+    }
+
+    @Test
+    public void finishAndAbort_reachEverySink() throws IOException {
+        RecordingSink first = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        List<RecordingSink> sinks = Arrays.asList(first, second);
+
+        StreamCopier.finish(sinks);
+        StreamCopier.abort(sinks);
+        StreamCopier.finish(null);
+        StreamCopier.abort(null);
+
+        assertEquals(1, first.finishCount);
+        assertEquals(1, second.finishCount);
+        assertEquals(1, first.abortCount);
+        assertEquals(1, second.abortCount);
+    }
+
+    @Test
+    public void transfer_leavesTheSourceAfterTheCopiedBytes() throws IOException {
+        byte[] content = randomBytes(5000);
+        File source = write("source.bin", content);
+        File target = new File(directory, "target.bin");
+
+        RandomAccessFile input = new RandomAccessFile(source, "r");
+        FileChannel output = new FileOutputStream(target).getChannel();
+        try {
+            input.seek(1000);
+            assertEquals(4000, StreamCopier.transfer(input.getChannel(), output, null));
+            assertEquals(content.length, input.getChannel().position());
+        } finally {
+            StreamCopier.closeQuietly(input);
+            StreamCopier.closeQuietly(output);
+        }
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, content.length), read(target));
+    }
+
+    private long copyChannels(File source, File target, Cancellation cancellation, List<? extends ByteSink> sinks) throws IOException {
+        FileChannel input = new FileInputStream(source).getChannel();
+        FileChannel output = new FileOutputStream(target).getChannel();
+        try {
+            return StreamCopier.copy(input, output, cancellation, sinks);
+        } finally {
+            StreamCopier.closeQuietly(input);
+            StreamCopier.closeQuietly(output);
+        }
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = new File(directory, name);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            StreamCopier.closeQuietly(outputStream);
+        }
+        return file;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -23,36 +23,136 @@ public class AudioPlayer {
     private OnPlayerListener listener;
     private MediaPlayer player;
     private String audioPath;
+    private AudioPlayerPool pool;
+    private boolean isPrepared = false;
+    private boolean isStartPending = false;
+    private boolean isPoolPending = false;
+    private int prepareTraceId = 0;
     private Handler handler = new Handler();
 
     public boolean isPlaying() {
-        if (player != null){
+        if (player != null && isPrepared){
             return player.isPlaying();
         }
         return false;
     }
 
+    public boolean isPrepared() {
+        return isPrepared;
+    }
+
     public AudioPlayer(Context context, String audioPath, OnPlayerListener listener) {
         this.context = context;
         this.audioPath = audioPath;
         this.listener = listener;
     }
 
+    public AudioPlayer(Context context, String audioPath, OnPlayerListener listener, AudioPlayerPool pool) {
+        this(context, audioPath, listener);
+        this.pool = pool;
+    }
+
+    //Starts preparing in the background so a later startPlaying begins without delay
+    public void prepare() {
+        if (player == null && !isPoolPending && !isStartPending) {
+            setupPlayer();
+        }
+    }
+
     private void setupPlayer() {
-        player = MediaPlayer.create(context, Uri.parse(audioPath));
-        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        prepareTraceId = PickerTrace.nextRequestId();
+        PickerTrace.beginAsync("player:prepare", prepareTraceId);
+        if (pool != null) {
+            isPoolPending = true;
+            if (pool.acquire(audioPath, poolListener)) {
+                return;
+            }
+            isPoolPending = false;
+        }
+
+        MediaPlayer mediaPlayer = new MediaPlayer();
+        mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        mediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(MediaPlayer mp) {
+                onPlayerReady(mp);
+            }
+        });
+        mediaPlayer.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(MediaPlayer mp, int what, int extra) {
+                if (isPrepared) {
+                    return false;
+                }
+                endPrepareTrace();
+                isStartPending = false;
+                player = null;
+                mp.release();
+                listener.OnStop(false);
+                return true;
+            }
+        });
+        try {
+            mediaPlayer.setDataSource(context, Uri.parse(audioPath));
+            mediaPlayer.prepareAsync();
+            player = mediaPlayer;
+        } catch (Exception e) {
+            e.printStackTrace();
+            endPrepareTrace();
+            mediaPlayer.release();
+            isStartPending = false;
+            listener.OnStop(false);
+        }
+    }
+
+    private final AudioPlayerPool.OnReadyListener poolListener = new AudioPlayerPool.OnReadyListener() {
+        @Override
+        public void onPlayerReady(String audioPath, MediaPlayer mediaPlayer) {
+            isPoolPending = false;
+            onPlayerReady(mediaPlayer);
+        }
+
+        @Override
+        public void onPlayerError(String audioPath, Exception e) {
+            e.printStackTrace();
+            isPoolPending = false;
+            endPrepareTrace();
+            isStartPending = false;
+            listener.OnStop(false);
+        }
+    };
+
+    private void endPrepareTrace() {
+        if (prepareTraceId != 0) {
+            PickerTrace.endAsync("player:prepare", prepareTraceId);
+            prepareTraceId = 0;
+        }
+    }
+
+    private void onPlayerReady(MediaPlayer mediaPlayer) {
+        endPrepareTrace();
+        player = mediaPlayer;
+        isPrepared = true;
         player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
             @Override
             public void onCompletion(MediaPlayer mp) {
                 listener.OnStop(true);
             }
         });
-        player.prepareAsync();
+        if (isStartPending) {
+            isStartPending = false;
+            startPlaying();
+        }
     }
 
     public void startPlaying() {
-        if (player == null) {
-            setupPlayer();
+        if (!isPrepared) {
+            //Toggles like play/pause would, a second tap before the player is ready cancels the start
+            isStartPending = !isStartPending;
+            if (player == null && !isPoolPending && isStartPending) {
+                setupPlayer();
+            }
+            return;
         }
         boolean isPlaying = player.isPlaying();
         if (isPlaying) {
@@ -66,26 +166,49 @@ public class AudioPlayer {
     }
 
     public void stopPlaying() {
-        if (player != null && player.isPlaying()) {
+        isStartPending = false;
+        if (player != null && isPrepared && player.isPlaying()) {
             player.stop();
+            isPrepared = false;
             listener.OnStop(false);
+            //A stopped player has to be prepared again before it can start
+            releasePlayer();
         }
     }
 
     public void seekTo(int seconds) {
-        if (player != null) {
-            player.seekTo(seconds);
+        if (player != null && isPrepared) {
+            PickerTrace.begin("player:seek");
+            try {
+                player.seekTo(seconds);
+            } finally {
+                PickerTrace.end();
+            }
             listener.OnTimer(player.getCurrentPosition(), player.getDuration());
         }
     }
 
     public void releasePlayer() {
+        isStartPending = false;
+        endPrepareTrace();
+        if (isPoolPending) {
+            pool.cancel(audioPath, poolListener);
+            isPoolPending = false;
+        }
+        handler.removeCallbacks(UpdateMediaTime);
         if (player != null) {
-            player.stop();
-            listener.OnStop(false);
-            player.reset();
-            player.release();
+            if (isPrepared) {
+                player.stop();
+                listener.OnStop(false);
+            }
+            if (pool != null) {
+                pool.release(player);
+            } else {
+                player.reset();
+                player.release();
+            }
             player = null;
+            isPrepared = false;
         }
     }
 
@@ -95,7 +218,7 @@ public class AudioPlayer {
 
     private Runnable UpdateMediaTime = new Runnable() {
         public void run() {
-            if (player != null){
+            if (player != null && isPrepared){
                 listener.OnTimer(player.getCurrentPosition(), player.getDuration());
                 if (player.isPlaying()) {
                     handler.postDelayed(this, 1000);
@@ -0,0 +1,236 @@
+package atirek.pothiwala.picker;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Main thread only, MediaPlayer callbacks arrive on the looper that created the players
+public class AudioPlayerPool implements ComponentCallbacks2 {
+
+    public interface OnReadyListener {
+        void onPlayerReady(String audioPath, MediaPlayer player);
+
+        void onPlayerError(String audioPath, Exception e);
+    }
+
+    private static class Entry {
+        private final String audioPath;
+        private final MediaPlayer player;
+        private final List<OnReadyListener> listeners = new ArrayList<>();
+        private boolean isReady = false;
+        private boolean isInUse = false;
+
+        private Entry(String audioPath, MediaPlayer player) {
+            this.audioPath = audioPath;
+            this.player = player;
+        }
+    }
+
+    private final Context context;
+    private final int maxPlayers;
+    //Access ordered, the eldest entry is the first to give up its player
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ArrayDeque<MediaPlayer> idlePlayers = new ArrayDeque<>();
+    private boolean isShutdown = false;
+
+    public AudioPlayerPool(@NonNull Context context, int maxPlayers) {
+        this.context = context.getApplicationContext();
+        this.maxPlayers = Math.max(1, maxPlayers);
+        this.context.registerComponentCallbacks(this);
+    }
+
+    public void prefetch(@NonNull List<String> audioPaths) {
+        for (String audioPath : audioPaths) {
+            prepare(audioPath);
+        }
+    }
+
+    public boolean isReady(@NonNull String audioPath) {
+        Entry entry = entries.get(audioPath);
+        return entry != null && entry.isReady;
+    }
+
+    //Returns false when every pooled player is busy, the caller should use its own player then
+    public boolean acquire(@NonNull String audioPath, @NonNull OnReadyListener listener) {
+        Entry entry = entries.get(audioPath);
+        if (entry == null) {
+            entry = prepare(audioPath);
+        }
+        if (entry == null || entry.isInUse) {
+            return false;
+        }
+
+        entry.isInUse = true;
+        if (entry.isReady) {
+            listener.onPlayerReady(audioPath, entry.player);
+        } else {
+            entry.listeners.add(listener);
+        }
+        return true;
+    }
+
+    //Gives back an acquire that is still waiting for its player to prepare
+    public void cancel(@NonNull String audioPath, @NonNull OnReadyListener listener) {
+        Entry entry = entries.get(audioPath);
+        if (entry != null && entry.listeners.remove(listener)) {
+            entry.isInUse = false;
+        }
+    }
+
+    public void release(@NonNull MediaPlayer player) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().player == player) {
+                iterator.remove();
+                break;
+            }
+        }
+        recycle(player);
+    }
+
+    //Players an AudioPlayer still holds are left alone, they go away when it hands them back through release
+    public void clear() {
+        evictIdle();
+    }
+
+    public void shutdown() {
+        isShutdown = true;
+        clear();
+        context.unregisterComponentCallbacks(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictIdle();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictIdle();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    private Entry prepare(final String audioPath) {
+        Entry existing = entries.get(audioPath);
+        if (existing != null || isShutdown) {
+            return existing;
+        }
+        MediaPlayer player = obtainPlayer();
+        if (player == null) {
+            return null;
+        }
+
+        final Entry entry = new Entry(audioPath, player);
+        entries.put(audioPath, entry);
+        player.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(MediaPlayer mp) {
+                entry.isReady = true;
+                List<OnReadyListener> listeners = new ArrayList<>(entry.listeners);
+                entry.listeners.clear();
+                for (OnReadyListener listener : listeners) {
+                    listener.onPlayerReady(audioPath, mp);
+                }
+            }
+        });
+        player.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(MediaPlayer mp, int what, int extra) {
+                if (entry.isReady) {
+                    return false;
+                }
+                fail(entry, new IOException("Unable to prepare " + audioPath + " (" + what + ", " + extra + ")"));
+                return true;
+            }
+        });
+
+        try {
+            player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            player.setDataSource(context, Uri.parse(audioPath));
+            player.prepareAsync();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            entries.remove(audioPath);
+            recycle(player);
+            return null;
+        }
+        return entry;
+    }
+
+    private void fail(Entry entry, Exception e) {
+        entries.remove(entry.audioPath);
+        List<OnReadyListener> listeners = new ArrayList<>(entry.listeners);
+        entry.listeners.clear();
+        recycle(entry.player);
+        for (OnReadyListener listener : listeners) {
+            listener.onPlayerError(entry.audioPath, e);
+        }
+    }
+
+    private MediaPlayer obtainPlayer() {
+        MediaPlayer player = idlePlayers.poll();
+        if (player != null) {
+            return player;
+        }
+        if (entries.size() < maxPlayers) {
+            return new MediaPlayer();
+        }
+
+        //At capacity, take over the least recently used player nobody is holding
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!entry.isInUse) {
+                iterator.remove();
+                entry.player.reset();
+                return entry.player;
+            }
+        }
+        return null;
+    }
+
+    private void recycle(MediaPlayer player) {
+        player.setOnPreparedListener(null);
+        player.setOnErrorListener(null);
+        player.setOnCompletionListener(null);
+        player.reset();
+        if (!isShutdown && idlePlayers.size() + entries.size() < maxPlayers) {
+            idlePlayers.push(player);
+        } else {
+            player.release();
+        }
+    }
+
+    private void evictIdle() {
+        for (MediaPlayer player : idlePlayers) {
+            player.release();
+        }
+        idlePlayers.clear();
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (!entry.isInUse) {
+                iterator.remove();
+                entry.player.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package atirek.pothiwala.picker;
+
+import android.media.MediaRecorder;
+import android.os.Build;
+import androidx.annotation.NonNull;
+
+import atirek.pothiwala.picker.core.AudioBudget;
+import atirek.pothiwala.picker.core.AudioBudget.Codec;
+
+//Container, codec and rates for AudioRecorder, either fixed or fitted to a byte budget
+public class AudioProfile {
+
+    //MediaRecorder.OutputFormat.OGG and AudioEncoder.OPUS, newer than the compile SDK
+    private static final int OUTPUT_FORMAT_OGG = 11;
+    private static final int AUDIO_ENCODER_OPUS = 7;
+    private static final int OPUS_API = 29;
+
+    private final Codec codec;
+    private final int sampleRate;
+    private final int bitRate;
+    private final int channels;
+
+    public AudioProfile(@NonNull Codec codec, int sampleRate, int bitRate, int channels) {
+        this.codec = codec;
+        this.sampleRate = sampleRate;
+        this.bitRate = bitRate;
+        this.channels = channels;
+    }
+
+    //What AudioRecorder always used
+    public static AudioProfile amrNb() {
+        return new AudioProfile(Codec.AMR_NB, 8000, 12200, 1);
+    }
+
+    public static AudioProfile amrWb() {
+        return new AudioProfile(Codec.AMR_WB, 16000, 23850, 1);
+    }
+
+    public static AudioProfile aacLc(int bitRate) {
+        return new AudioProfile(Codec.AAC_LC, 44100, bitRate, 1);
+    }
+
+    public static AudioProfile heAac(int bitRate) {
+        return new AudioProfile(Codec.HE_AAC, 44100, bitRate, 1);
+    }
+
+    public static AudioProfile opus(int bitRate) {
+        return new AudioProfile(Codec.OPUS, 48000, bitRate, 1);
+    }
+
+    //Best quality whose bit rate keeps totalSeconds of audio within maxBytes
+    public static AudioProfile forBudget(int totalSeconds, long maxBytes) {
+        AudioBudget budget = AudioBudget.fit(totalSeconds, maxBytes, isOpusSupported());
+        return new AudioProfile(budget.getCodec(), budget.getSampleRate(), budget.getBitRate(), 1);
+    }
+
+    public static boolean isOpusSupported() {
+        return Build.VERSION.SDK_INT >= OPUS_API;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public String getExtension() {
+        switch (codec) {
+            case AAC_LC:
+            case HE_AAC:
+                return "m4a";
+            case OPUS:
+                return "ogg";
+            default:
+                return "3gp";
+        }
+    }
+
+    //Upper bound of the recording size, what the budget was computed from
+    public long getBytesFor(int seconds) {
+        return (long) bitRate * seconds / 8;
+    }
+
+    //Opus needs Android 10, older devices refit the budget when there is one, otherwise HE-AAC at the same rate
+    AudioProfile resolve(int totalSeconds, long maxBytes) {
+        if (codec == Codec.OPUS && !isOpusSupported()) {
+            if (maxBytes > 0) {
+                return forBudget(totalSeconds, maxBytes);
+            }
+            return new AudioProfile(Codec.HE_AAC, 44100, Math.max(bitRate, 24000), channels);
+        }
+        return this;
+    }
+
+    void apply(@NonNull MediaRecorder recorder) {
+        switch (codec) {
+            case AMR_WB:
+                recorder.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
+                recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_WB);
+                break;
+            case AAC_LC:
+                recorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+                recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+                break;
+            case HE_AAC:
+                recorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+                recorder.setAudioEncoder(MediaRecorder.AudioEncoder.HE_AAC);
+                break;
+            case OPUS:
+                recorder.setOutputFormat(OUTPUT_FORMAT_OGG);
+                recorder.setAudioEncoder(AUDIO_ENCODER_OPUS);
+                break;
+            default:
+                recorder.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
+                recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
+                break;
+        }
+        recorder.setAudioSamplingRate(sampleRate);
+        recorder.setAudioEncodingBitRate(bitRate);
+        recorder.setAudioChannels(channels);
+    }
+}
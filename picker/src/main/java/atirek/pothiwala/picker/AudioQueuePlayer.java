@@ -0,0 +1,400 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+//Plays the paths back to back; OnTimer reports the position and duration of the whole queue
+public class AudioQueuePlayer {
+
+    public interface OnQueueListener {
+        void OnTrackChanged(int index, String audioPath);
+    }
+
+    private final Context context;
+    private final List<String> audioPaths;
+    private final AudioPlayer.OnPlayerListener listener;
+    private final long[] durations;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private OnQueueListener onQueueListener;
+    private Executor executor;
+
+    private MediaPlayer currentPlayer;
+    private MediaPlayer nextPlayer;
+    private int currentIndex = 0;
+    private boolean isCurrentPrepared = false;
+    private boolean isNextPrepared = false;
+    private boolean isStartPending = false;
+    private boolean isDurationRequested = false;
+    private int pendingSeek = -1;
+
+    public AudioQueuePlayer(@NonNull Context context, @NonNull List<String> audioPaths, @NonNull AudioPlayer.OnPlayerListener listener) {
+        this.context = context.getApplicationContext();
+        this.audioPaths = new ArrayList<>(audioPaths);
+        this.listener = listener;
+        this.durations = new long[audioPaths.size()];
+    }
+
+    public void setOnQueueListener(OnQueueListener onQueueListener) {
+        this.onQueueListener = onQueueListener;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    public boolean isPlaying() {
+        if (currentPlayer != null && isCurrentPrepared) {
+            return currentPlayer.isPlaying();
+        }
+        return false;
+    }
+
+    public int getPosition() {
+        int position = (int) getOffset(currentIndex);
+        if (currentPlayer != null && isCurrentPrepared) {
+            position += currentPlayer.getCurrentPosition();
+        } else if (pendingSeek > 0) {
+            position += pendingSeek;
+        }
+        return position;
+    }
+
+    //Items whose duration is not known yet count as zero until they are read or prepared
+    public int getDuration() {
+        return (int) getOffset(durations.length);
+    }
+
+    public void startPlaying() {
+        if (audioPaths.isEmpty()) {
+            return;
+        }
+        loadDurations();
+        if (!isCurrentPrepared) {
+            isStartPending = !isStartPending;
+            if (currentPlayer == null && isStartPending) {
+                startFromCurrent();
+            }
+            return;
+        }
+        if (currentPlayer.isPlaying()) {
+            currentPlayer.pause();
+            listener.OnPause();
+        } else {
+            currentPlayer.start();
+            listener.OnStart();
+            updateMediaTime();
+        }
+    }
+
+    public void stopPlaying() {
+        isStartPending = false;
+        if (currentPlayer != null && isCurrentPrepared && currentPlayer.isPlaying()) {
+            currentPlayer.stop();
+            listener.OnStop(false);
+            releasePlayers();
+            currentIndex = 0;
+        }
+    }
+
+    //Position on the queue timeline, jumping to the item it falls in
+    public void seekTo(int millis) {
+        if (audioPaths.isEmpty()) {
+            return;
+        }
+        int index = 0;
+        long offset = 0;
+        while (index < durations.length - 1 && durations[index] > 0 && millis >= offset + durations[index]) {
+            offset += durations[index];
+            index++;
+        }
+        int position = (int) Math.max(0, millis - offset);
+
+        if (index == currentIndex && currentPlayer != null) {
+            if (isCurrentPrepared) {
+                currentPlayer.seekTo(position);
+                listener.OnTimer(getPosition(), getDuration());
+            } else {
+                pendingSeek = position;
+            }
+            return;
+        }
+
+        boolean isResume = isPlaying() || isStartPending;
+        releasePlayers();
+        currentIndex = index;
+        pendingSeek = position;
+        isStartPending = isResume;
+        currentPlayer = createPlayer(currentIndex);
+        notifyTrackChanged();
+    }
+
+    public void releasePlayer() {
+        isStartPending = false;
+        if (currentPlayer != null) {
+            if (isCurrentPrepared) {
+                currentPlayer.stop();
+                listener.OnStop(false);
+            }
+        }
+        releasePlayers();
+    }
+
+    private MediaPlayer createPlayer(int index) {
+        MediaPlayer player = new MediaPlayer();
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        player.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(MediaPlayer mp) {
+                onPlayerPrepared(mp);
+            }
+        });
+        player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(MediaPlayer mp) {
+                onPlayerCompletion(mp);
+            }
+        });
+        player.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(MediaPlayer mp, int what, int extra) {
+                onPlayerError(mp);
+                return true;
+            }
+        });
+        try {
+            player.setDataSource(context, Uri.parse(audioPaths.get(index)));
+            player.prepareAsync();
+            return player;
+        } catch (Exception e) {
+            e.printStackTrace();
+            player.release();
+            return null;
+        }
+    }
+
+    private void onPlayerPrepared(MediaPlayer player) {
+        if (player == currentPlayer) {
+            isCurrentPrepared = true;
+            updateDuration(currentIndex, player);
+            if (pendingSeek > 0) {
+                player.seekTo(pendingSeek);
+            }
+            pendingSeek = -1;
+            if (isStartPending) {
+                isStartPending = false;
+                player.start();
+                listener.OnStart();
+                updateMediaTime();
+            }
+            prepareNext();
+
+        } else if (player == nextPlayer) {
+            isNextPrepared = true;
+            updateDuration(currentIndex + 1, player);
+            if (isCurrentPrepared) {
+                //The framework starts it the moment the current one ends, without a gap
+                currentPlayer.setNextMediaPlayer(player);
+            }
+        }
+    }
+
+    private void onPlayerCompletion(MediaPlayer player) {
+        if (player != currentPlayer) {
+            return;
+        }
+        if (currentIndex + 1 >= audioPaths.size()) {
+            handler.removeCallbacks(UpdateMediaTime);
+            listener.OnTimer(getDuration(), getDuration());
+            listener.OnStop(true);
+            releasePlayers();
+            currentIndex = 0;
+            return;
+        }
+
+        //A prepared next player was chained and is already playing
+        boolean isChained = isNextPrepared;
+        currentPlayer = nextPlayer;
+        isCurrentPrepared = isNextPrepared;
+        nextPlayer = null;
+        isNextPrepared = false;
+        currentIndex++;
+        player.release();
+        notifyTrackChanged();
+
+        if (isChained) {
+            //The old player stopped the timer when it completed, restart it on the chained one
+            updateMediaTime();
+            prepareNext();
+        } else if (currentPlayer != null) {
+            isStartPending = true;
+        } else {
+            startFromCurrent();
+        }
+    }
+
+    //Creates the current item's player to start once prepared, items that cannot be opened are skipped
+    private void startFromCurrent() {
+        while (true) {
+            currentPlayer = createPlayer(currentIndex);
+            if (currentPlayer != null) {
+                isStartPending = true;
+                return;
+            }
+            if (currentIndex + 1 >= audioPaths.size()) {
+                break;
+            }
+            currentIndex++;
+            notifyTrackChanged();
+        }
+        //Nothing left to play, end like a failed player does
+        isStartPending = false;
+        listener.OnStop(false);
+        releasePlayers();
+        currentIndex = 0;
+    }
+
+    private void onPlayerError(MediaPlayer player) {
+        if (player == nextPlayer) {
+            //Retried as a regular start once the current item completes
+            if (isCurrentPrepared) {
+                currentPlayer.setNextMediaPlayer(null);
+            }
+            nextPlayer = null;
+            isNextPrepared = false;
+            player.release();
+        } else if (player == currentPlayer) {
+            isStartPending = false;
+            listener.OnStop(false);
+            releasePlayers();
+        }
+    }
+
+    private void prepareNext() {
+        if (nextPlayer == null && currentIndex + 1 < audioPaths.size()) {
+            nextPlayer = createPlayer(currentIndex + 1);
+        }
+    }
+
+    private void releasePlayers() {
+        handler.removeCallbacks(UpdateMediaTime);
+        if (currentPlayer != null) {
+            currentPlayer.reset();
+            currentPlayer.release();
+            currentPlayer = null;
+        }
+        if (nextPlayer != null) {
+            nextPlayer.release();
+            nextPlayer = null;
+        }
+        isCurrentPrepared = false;
+        isNextPrepared = false;
+        pendingSeek = -1;
+    }
+
+    private void notifyTrackChanged() {
+        if (onQueueListener != null) {
+            onQueueListener.OnTrackChanged(currentIndex, audioPaths.get(currentIndex));
+        }
+    }
+
+    private void updateDuration(int index, MediaPlayer player) {
+        int duration = player.getDuration();
+        if (duration > 0) {
+            durations[index] = duration;
+        }
+    }
+
+    private long getOffset(int index) {
+        long offset = 0;
+        for (int i = 0; i < index; i++) {
+            offset += durations[i];
+        }
+        return offset;
+    }
+
+    //Reads every duration up front so the queue timeline is complete before the items are prepared
+    private void loadDurations() {
+        if (isDurationRequested) {
+            return;
+        }
+        isDurationRequested = true;
+        final List<String> paths = new ArrayList<>(audioPaths);
+        Runnable loading = new Runnable() {
+            @Override
+            public void run() {
+                final long[] results = new long[paths.size()];
+                for (int i = 0; i < paths.size(); i++) {
+                    results[i] = readDuration(paths.get(i));
+                }
+                PickerExecutor.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < results.length; i++) {
+                            if (durations[i] <= 0) {
+                                durations[i] = results[i];
+                            }
+                        }
+                    }
+                });
+            }
+        };
+        try {
+            getExecutor().execute(loading);
+        } catch (RejectedExecutionException e) {
+            //Items still read their own duration when prepared, the next call asks again
+            isDurationRequested = false;
+        }
+    }
+
+    private long readDuration(String audioPath) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, Uri.parse(audioPath));
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            return duration != null ? Long.parseLong(duration) : 0;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return 0;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    private Executor getExecutor() {
+        if (executor == null) {
+            executor = PickerExecutor.getDefault();
+        }
+        return executor;
+    }
+
+    private void updateMediaTime() {
+        handler.removeCallbacks(UpdateMediaTime);
+        handler.post(UpdateMediaTime);
+    }
+
+    private Runnable UpdateMediaTime = new Runnable() {
+        public void run() {
+            if (currentPlayer != null && isCurrentPrepared) {
+                listener.OnTimer(getPosition(), getDuration());
+                if (currentPlayer.isPlaying()) {
+                    handler.postDelayed(this, 1000);
+                }
+            }
+        }
+    };
+}
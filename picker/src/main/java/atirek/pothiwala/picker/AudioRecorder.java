@@ -2,9 +2,12 @@ package atirek.pothiwala.picker;
 
 import android.content.Context;
 import android.media.MediaRecorder;
-import android.os.CountDownTimer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import java.io.File;
+import java.io.IOException;
 
 public class AudioRecorder {
 
@@ -15,36 +18,193 @@ public class AudioRecorder {
 
         void OnStop();
 
+        //The recording stays pinned against cache eviction until releaseRecording is called with its path
         void OnComplete(String path);
 
         void OnException(String exception);
     }
 
-    private MediaRecorder recorder = new MediaRecorder();
+    //Called on the main thread at every tick
+    public interface OnProgressListener {
+        void OnProgress(long elapsedMillis, long totalMillis, int amplitude);
+    }
+
+    //Called on the capture thread, the samples array is reused for the next chunk
+    public interface OnPcmListener {
+        void OnPcmChunk(short[] samples, int length);
+
+        void OnOverrun(long droppedSamples, long overrunCount);
+    }
+
+    public enum CaptureMode {
+        FILE, PCM_STREAM
+    }
+
+    private MediaRecorder recorder;
+    private PcmCapture pcmCapture;
     private String audioFilePath;
     private int totalSeconds = 30;
     private boolean isRecording = false;
+    private CaptureMode captureMode = CaptureMode.FILE;
+    private int sampleRate = 16000;
+    private AudioProfile profile;
+    private long maxBytes = 0;
+    private int chunkSize = 1024;
+    private OnPcmListener onPcmListener;
+    private OnProgressListener onProgressListener;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private int tickIntervalMillis = 1000;
+    private long startTime;
+    private int lastReportedSeconds = -1;
+    private int[] amplitudes = new int[1024];
+    private int amplitudeIndex = 0;
+    private int amplitudeCount = 0;
+    private volatile int pcmPeak = 0;
+    private int recordingTraceId = 0;
 
     public boolean isRecording() {
         return isRecording;
     }
 
+    //Ends the pin taken before OnComplete, the cache quota may evict the recording from then on
+    public void releaseRecording(String path) {
+        CacheManager.getInstance(context).unpin(new File(path));
+    }
+
+    public void setCaptureMode(CaptureMode captureMode) {
+        this.captureMode = captureMode;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    //Encoder settings for FILE mode, AMR-NB in 3GP unless set
+    public void setProfile(AudioProfile profile) {
+        this.profile = profile;
+    }
+
+    //Fits the FILE mode encoder to totalSeconds so a full-length recording stays within maxBytes, zero is off
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public AudioProfile getProfile() {
+        if (profile != null) {
+            return profile.resolve(totalSeconds, maxBytes);
+        }
+        if (maxBytes > 0) {
+            return AudioProfile.forBudget(totalSeconds, maxBytes);
+        }
+        return AudioProfile.amrNb();
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    public void setOnPcmListener(OnPcmListener onPcmListener) {
+        this.onPcmListener = onPcmListener;
+    }
+
     public void setTotalSeconds(int totalSeconds) {
         this.totalSeconds = totalSeconds;
     }
 
-    private CountDownTimer countDownTimer = new CountDownTimer(totalSeconds * 1000, 1000) {
-        @Override
-        public void onTick(long millisUntilFinished) {
-            onRecordListener.OnTimer(Math.round(millisUntilFinished / 1000), totalSeconds);
+    public void setTickInterval(int tickIntervalMillis) {
+        this.tickIntervalMillis = Math.max(10, tickIntervalMillis);
+    }
+
+    public void setOnProgressListener(OnProgressListener onProgressListener) {
+        this.onProgressListener = onProgressListener;
+    }
+
+    public void setAmplitudeCapacity(int capacity) {
+        amplitudes = new int[Math.max(1, capacity)];
+        amplitudeCount = 0;
+        amplitudeIndex = 0;
+    }
+
+    //Copies the sampled levels, oldest first, into target and returns how many were copied
+    public int getAmplitudes(int[] target) {
+        int count = Math.min(amplitudeCount, target.length);
+        int start = amplitudeIndex - count;
+        if (start < 0) {
+            start += amplitudes.length;
         }
+        for (int i = 0; i < count; i++) {
+            target[i] = amplitudes[(start + i) % amplitudes.length];
+        }
+        return count;
+    }
 
+    public int getLatestAmplitude() {
+        if (amplitudeCount == 0) {
+            return 0;
+        }
+        int index = amplitudeIndex == 0 ? amplitudes.length - 1 : amplitudeIndex - 1;
+        return amplitudes[index];
+    }
+
+    private final Runnable recordingTick = new Runnable() {
         @Override
-        public void onFinish() {
-            stopRecording(false);
+        public void run() {
+            if (!isRecording) {
+                return;
+            }
+            long elapsedMillis = SystemClock.elapsedRealtime() - startTime;
+            long totalMillis = totalSeconds * 1000L;
+            int amplitude = sampleAmplitude();
+
+            if (onProgressListener != null) {
+                onProgressListener.OnProgress(Math.min(elapsedMillis, totalMillis), totalMillis, amplitude);
+            }
+            int remainingSeconds = (int) (Math.max(0, totalMillis - elapsedMillis) / 1000);
+            if (remainingSeconds != lastReportedSeconds) {
+                lastReportedSeconds = remainingSeconds;
+                onRecordListener.OnTimer(remainingSeconds, totalSeconds);
+            }
+
+            if (elapsedMillis >= totalMillis) {
+                stopRecording(false);
+                return;
+            }
+            //Aligns ticks to the start time so they never drift, and lands the last one on the limit
+            long delay = tickIntervalMillis - (elapsedMillis % tickIntervalMillis);
+            handler.postDelayed(this, Math.min(delay, totalMillis - elapsedMillis));
         }
     };
 
+    private int sampleAmplitude() {
+        int amplitude = 0;
+        try {
+            if (recorder != null) {
+                amplitude = recorder.getMaxAmplitude();
+            } else if (pcmCapture != null) {
+                amplitude = pcmPeak;
+                pcmPeak = 0;
+            }
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+        amplitudes[amplitudeIndex] = amplitude;
+        amplitudeIndex = (amplitudeIndex + 1) % amplitudes.length;
+        if (amplitudeCount < amplitudes.length) {
+            amplitudeCount++;
+        }
+        return amplitude;
+    }
+
+    private void startTimer() {
+        startTime = SystemClock.elapsedRealtime();
+        lastReportedSeconds = -1;
+        amplitudeCount = 0;
+        amplitudeIndex = 0;
+        handler.removeCallbacks(recordingTick);
+        handler.post(recordingTick);
+    }
+
     private Context context;
     private OnRecordListener onRecordListener;
 
@@ -54,13 +214,27 @@ public class AudioRecorder {
     }
 
     private void setUpRecorder() {
+        PickerTrace.begin("recorder:prepare");
         try {
+            AudioProfile audioProfile = getProfile();
             recorder = new MediaRecorder(); 
             recorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-            recorder.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
-            audioFilePath = FileConfigure.generateNewFile(context, "3gp").getAbsolutePath();
+            audioProfile.apply(recorder);
+            audioFilePath = FileConfigure.generateCaptureFile(context, audioProfile.getExtension()).getAbsolutePath();
+            FileConfigure.markCaptureStarted(new File(audioFilePath));
             recorder.setOutputFile(audioFilePath);
-            recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
+            if (maxBytes > 0) {
+                //Encoders overshoot their bit rate on some devices, the recorder stops itself at the budget
+                recorder.setMaxFileSize(maxBytes);
+                recorder.setOnInfoListener(new MediaRecorder.OnInfoListener() {
+                    @Override
+                    public void onInfo(MediaRecorder mr, int what, int extra) {
+                        if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED && isRecording) {
+                            stopRecording(false);
+                        }
+                    }
+                });
+            }
             recorder.prepare();
 
             onRecordListener.OnTimer(0, totalSeconds);
@@ -68,58 +242,175 @@ public class AudioRecorder {
         } catch (Exception e) {
             e.printStackTrace();
             onRecordListener.OnException(e.getMessage());
+        } finally {
+            PickerTrace.end();
         }
     }
 
+    private void setUpPcmCapture() throws IOException {
+        audioFilePath = FileConfigure.generateCaptureFile(context, "wav").getAbsolutePath();
+        FileConfigure.markCaptureStarted(new File(audioFilePath));
+        final String capturePath = audioFilePath;
+        pcmCapture = new PcmCapture(new File(audioFilePath), sampleRate, chunkSize, new PcmCapture.Listener() {
+            @Override
+            public void onChunk(short[] samples, int length) {
+                int peak = pcmPeak;
+                for (int i = 0; i < length; i++) {
+                    int level = Math.abs(samples[i]);
+                    if (level > peak) {
+                        peak = level;
+                    }
+                }
+                pcmPeak = peak;
+                if (onPcmListener != null) {
+                    onPcmListener.OnPcmChunk(samples, length);
+                }
+            }
+
+            @Override
+            public void onOverrun(long droppedSamples, long overrunCount) {
+                if (onPcmListener != null) {
+                    onPcmListener.OnOverrun(droppedSamples, overrunCount);
+                }
+            }
+
+            @Override
+            public void onError(final String error) {
+                PickerExecutor.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        //Unless the recording already moved on, it ends here like a discarded one
+                        if (isRecording && capturePath.equals(audioFilePath)) {
+                            stopRecording(true);
+                        }
+                        onRecordListener.OnException(error);
+                    }
+                });
+            }
+        });
+        pcmCapture.start();
+
+        onRecordListener.OnTimer(0, totalSeconds);
+    }
+
     public boolean startRecording() {
+        PickerTrace.begin("recorder:start");
         try {
 
-            if (recorder == null){
-                setUpRecorder();
+            if (captureMode == CaptureMode.PCM_STREAM) {
+                setUpPcmCapture();
+            } else {
+                if (recorder == null){
+                    setUpRecorder();
+                }
+                recorder.start();
             }
-            recorder.start();
-            countDownTimer.start();
-
             isRecording = true;
+            startTimer();
+            recordingTraceId = PickerTrace.nextRequestId();
+            PickerTrace.beginAsync("recorder:recording", recordingTraceId);
 
             return true;
 
         } catch (Exception e) {
             e.printStackTrace();
+            abandonRecording();
             onRecordListener.OnException(e.getMessage());
 
             return false;
+        } finally {
+            PickerTrace.end();
         }
 
     }
 
-    public boolean stopRecording(boolean isDelete) {
+    //Releases whatever a failed start or stop left behind, the partial file included
+    private void abandonRecording() {
+        handler.removeCallbacks(recordingTick);
+        isRecording = false;
+        if (recorder != null) {
+            recorder.release();
+            recorder = null;
+        }
+        if (pcmCapture != null) {
+            pcmCapture.stop(null);
+            pcmCapture = null;
+        }
+        if (audioFilePath != null) {
+            File audioFile = new File(audioFilePath);
+            FileConfigure.markCaptureFinished(audioFile);
+            FileConfigure.deleteFile(audioFile);
+            FileConfigure.releaseCapture(context, audioFile);
+            audioFilePath = null;
+        }
+    }
+
+    public boolean stopRecording(final boolean isDelete) {
+        PickerTrace.begin("recorder:stop");
         try {
+            if (recordingTraceId != 0) {
+                PickerTrace.endAsync("recorder:recording", recordingTraceId);
+                recordingTraceId = 0;
+            }
 
             if (recorder != null){
                 recorder.stop();
                 recorder.release();
                 recorder = null;
             }
-            countDownTimer.cancel();
+            handler.removeCallbacks(recordingTick);
             isRecording = false;
-
-            if (isDelete){
-                FileConfigure.deleteFile(new File(audioFilePath));
+            final String path = audioFilePath;
+            if (isDelete) {
                 audioFilePath = null;
+            }
+            if (pcmCapture != null) {
+                //The capture threads finish the WAV header in the background, the file is handed over after that
+                pcmCapture.stop(new Runnable() {
+                    @Override
+                    public void run() {
+                        PickerExecutor.postToMain(new Runnable() {
+                            @Override
+                            public void run() {
+                                finishRecording(path, isDelete);
+                            }
+                        });
+                    }
+                });
+                pcmCapture = null;
             } else {
-                onRecordListener.OnComplete(audioFilePath);
+                finishRecording(path, isDelete);
             }
 
             return true;
 
         } catch (Exception e) {
             e.printStackTrace();
+            abandonRecording();
             onRecordListener.OnException(e.getMessage());
 
             return false;
+        } finally {
+            PickerTrace.end();
         }
 
     }
 
+    private void finishRecording(String path, boolean isDelete) {
+        if (path == null) {
+            return;
+        }
+        File audioFile = new File(path);
+        FileConfigure.markCaptureFinished(audioFile);
+        FileConfigure.releaseCapture(context, audioFile);
+        if (isDelete) {
+            FileConfigure.deleteFile(audioFile);
+        } else {
+            CacheManager cacheManager = CacheManager.getInstance(context);
+            cacheManager.pin(audioFile);
+            cacheManager.register(audioFile, FilePicker.FileSource.AUDIO_CAPTURE.name());
+            onRecordListener.OnComplete(path);
+        }
+    }
+
 }
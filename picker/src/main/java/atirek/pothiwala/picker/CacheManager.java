@@ -0,0 +1,39 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import atirek.pothiwala.picker.core.CacheIndex;
+
+public class CacheManager extends CacheIndex {
+
+    private static final Map<String, CacheManager> instances = new HashMap<>();
+
+    public static CacheManager getInstance(@NonNull Context context) {
+        File directory = FileConfigure.privateDirectory(context);
+        synchronized (instances) {
+            CacheManager manager = instances.get(directory.getAbsolutePath());
+            if (manager == null) {
+                manager = new CacheManager(directory);
+                instances.put(directory.getAbsolutePath(), manager);
+            }
+            return manager;
+        }
+    }
+
+    private final File directory;
+
+    private CacheManager(File directory) {
+        super(directory);
+        this.directory = directory;
+    }
+
+    @Override
+    protected void onEvicted(File file) {
+        FileConfigure.deleteFile(WaveformExtractor.getSidecar(directory, file));
+    }
+}
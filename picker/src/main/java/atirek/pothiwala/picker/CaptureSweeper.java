@@ -0,0 +1,129 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import atirek.pothiwala.picker.core.PickerFiles;
+
+public class CaptureSweeper {
+
+    public interface OnSweepListener {
+        void onSweepFinished(int fileCount, long reclaimedBytes);
+    }
+
+    public static class Result {
+        private int fileCount;
+        private long reclaimedBytes;
+
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        public long getReclaimedBytes() {
+            return reclaimedBytes;
+        }
+    }
+
+    private final Context context;
+    private long emptyAgeMillis = TimeUnit.MINUTES.toMillis(10);
+    private long staleAgeMillis = TimeUnit.DAYS.toMillis(1);
+
+    public CaptureSweeper(@NonNull Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public void setEmptyAge(long emptyAgeMillis) {
+        this.emptyAgeMillis = emptyAgeMillis;
+    }
+
+    public void setStaleAge(long staleAgeMillis) {
+        this.staleAgeMillis = staleAgeMillis;
+    }
+
+    public void start(final OnSweepListener listener) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                final Result result = sweep();
+                if (listener != null) {
+                    PickerExecutor.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onSweepFinished(result.fileCount, result.reclaimedBytes);
+                        }
+                    });
+                }
+            }
+        }, "picker-sweeper");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void startOnIdle(final OnSweepListener listener) {
+        if (Looper.myLooper() == null) {
+            start(listener);
+            return;
+        }
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                start(listener);
+                return false;
+            }
+        });
+    }
+
+    public Result sweep() {
+        Result result = new Result();
+        File[] files = FileConfigure.privateDirectory(context).listFiles();
+        if (files == null) {
+            return result;
+        }
+
+        //Anything else in the folder was handed to the app by the public APIs and is the app's to delete
+        Set<String> capturePaths = FileConfigure.getCapturePaths(context);
+        CacheManager cacheManager = CacheManager.getInstance(context);
+        //Journaled captures may still be written by the camera app, even after a restart
+        PendingRequests pendingRequests = PendingRequests.getInstance(context);
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (!file.isFile() || PickerFiles.isHidden(file.getName())) {
+                continue;
+            }
+            boolean isCapture = capturePaths.contains(file.getAbsolutePath());
+            if (!isCapture && !PickerFiles.isTemporary(file.getName())) {
+                continue;
+            }
+            if (FileConfigure.isCaptureInFlight(file) || pendingRequests.isPending(file) || cacheManager.contains(file)) {
+                continue;
+            }
+
+            long length = file.length();
+            long age = now - file.lastModified();
+            boolean isOrphan = length == 0 ? age >= emptyAgeMillis : age >= staleAgeMillis;
+            if (isOrphan && file.delete()) {
+                if (isCapture) {
+                    FileConfigure.releaseCapture(context, file);
+                }
+                result.fileCount++;
+                result.reclaimedBytes += length;
+            }
+        }
+        for (String path : capturePaths) {
+            File file = new File(path);
+            if (!file.exists()) {
+                //Deleted by the app or renamed by the pick, nothing left to sweep
+                FileConfigure.releaseCapture(context, file);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+package atirek.pothiwala.picker;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import atirek.pothiwala.picker.core.MappedReader;
+
+public class CopyResult {
+
+    private final File file;
+    private final List<CopyTransform> transforms;
+
+    CopyResult(@NonNull File file, List<CopyTransform> transforms) {
+        this.file = file;
+        this.transforms = transforms != null ? Collections.unmodifiableList(transforms) : Collections.<CopyTransform>emptyList();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getLength() {
+        return file.length();
+    }
+
+    //Share one reader between the threads scanning the file, and close it when they are done
+    public MappedReader openReader() throws IOException {
+        return new MappedReader(file);
+    }
+
+    public List<CopyTransform> getTransforms() {
+        return transforms;
+    }
+
+    //The first transform of the given type, or null
+    public <T extends CopyTransform> T getTransform(@NonNull Class<T> type) {
+        for (CopyTransform transform : transforms) {
+            if (type.isInstance(transform)) {
+                return type.cast(transform);
+            }
+        }
+        return null;
+    }
+}
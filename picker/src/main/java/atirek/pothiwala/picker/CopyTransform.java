@@ -0,0 +1,206 @@
+package atirek.pothiwala.picker;
+
+import android.net.Uri;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+
+import atirek.pothiwala.picker.core.ByteSink;
+import atirek.pothiwala.picker.core.PickerFiles;
+
+//Sees the bytes of a pick while they are copied, so hashing or compressing them needs no second read
+public abstract class CopyTransform implements ByteSink {
+
+    //Transforms keep state, the factory is asked for a fresh set for every picked Uri
+    public interface Factory {
+        List<CopyTransform> create(Uri uri, FilePicker.FileSource source);
+    }
+
+    @Override
+    public void finish() throws IOException {
+    }
+
+    @Override
+    public void abort() {
+    }
+
+    public static class ByteCount extends CopyTransform {
+
+        private long count = 0;
+
+        @Override
+        public void update(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    public static class Digest extends CopyTransform {
+
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private final MessageDigest digest;
+        private byte[] result;
+
+        public Digest(@NonNull String algorithm) throws NoSuchAlgorithmException {
+            this(MessageDigest.getInstance(algorithm));
+        }
+
+        public Digest(@NonNull MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void update(byte[] buffer, int offset, int length) {
+            digest.update(buffer, offset, length);
+        }
+
+        @Override
+        public void finish() {
+            result = digest.digest();
+        }
+
+        public String getAlgorithm() {
+            return digest.getAlgorithm();
+        }
+
+        public byte[] getDigest() {
+            return result;
+        }
+
+        public String getHex() {
+            if (result == null) {
+                return null;
+            }
+            char[] chars = new char[result.length * 2];
+            for (int i = 0; i < result.length; i++) {
+                chars[i * 2] = HEX[(result[i] >> 4) & 0x0F];
+                chars[i * 2 + 1] = HEX[result[i] & 0x0F];
+            }
+            return new String(chars);
+        }
+    }
+
+    //Writes a transformed copy of the bytes to its own file, counting what reaches the disk
+    public static abstract class FileOutput extends CopyTransform {
+
+        private final File target;
+        private final File partial;
+        private CountingStream countingStream;
+        private OutputStream outputStream;
+        private boolean isFinished = false;
+
+        protected FileOutput(@NonNull File target) {
+            this.target = target;
+            this.partial = PickerFiles.partialFile(target);
+        }
+
+        protected abstract OutputStream wrap(OutputStream outputStream) throws IOException;
+
+        @Override
+        public void update(byte[] buffer, int offset, int length) throws IOException {
+            if (outputStream == null) {
+                countingStream = new CountingStream(new FileOutputStream(partial));
+                outputStream = wrap(countingStream);
+            }
+            outputStream.write(buffer, offset, length);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (outputStream == null) {
+                update(new byte[0], 0, 0);
+            }
+            outputStream.close();
+            outputStream = null;
+            if (!partial.renameTo(target)) {
+                FileConfigure.deleteFile(partial);
+                throw new IOException("Unable to move transformed file to " + target);
+            }
+            isFinished = true;
+        }
+
+        //Also after finish, when a later sink or the final move failed the whole copy
+        @Override
+        public void abort() {
+            FileCopier.closeQuietly(outputStream);
+            outputStream = null;
+            FileConfigure.deleteFile(partial);
+            if (isFinished) {
+                isFinished = false;
+                FileConfigure.deleteFile(target);
+            }
+        }
+
+        public File getTarget() {
+            return target;
+        }
+
+        public long getOutputLength() {
+            return countingStream != null ? countingStream.count : 0;
+        }
+    }
+
+    public static class Gzip extends FileOutput {
+
+        public Gzip(@NonNull File target) {
+            super(target);
+        }
+
+        @Override
+        protected OutputStream wrap(OutputStream outputStream) throws IOException {
+            return new GZIPOutputStream(outputStream, 64 * 1024);
+        }
+    }
+
+    //The cipher must already be initialized for encryption
+    public static class Encrypt extends FileOutput {
+
+        private final Cipher cipher;
+
+        public Encrypt(@NonNull Cipher cipher, @NonNull File target) {
+            super(target);
+            this.cipher = cipher;
+        }
+
+        @Override
+        protected OutputStream wrap(OutputStream outputStream) {
+            return new CipherOutputStream(outputStream, cipher);
+        }
+    }
+
+    private static class CountingStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        CountingStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package atirek.pothiwala.picker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.provider.OpenableColumns;
+import android.text.TextUtils;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import atirek.pothiwala.picker.core.ByteSink;
+import atirek.pothiwala.picker.core.ContentSniffer;
+import atirek.pothiwala.picker.core.PickerFiles;
+
+public class DedupStore {
+
+    private static final String PREFERENCES = "picker_dedup";
+    private static final String ALGORITHM = "SHA-256";
+    private static final String[] MODIFIED_COLUMNS = {"last_modified", "date_modified"};
+
+    public static File pickedExistingFile(@NonNull Context context, @NonNull Uri uri, CancellationSignal signal) throws IOException {
+        return pickedExistingFile(context, uri, signal, null);
+    }
+
+    public static File pickedExistingFile(@NonNull Context context, @NonNull Uri uri, CancellationSignal signal, List<CopyTransform> transforms) throws IOException {
+        return pickedExistingFile(context, uri, signal, transforms, null, null);
+    }
+
+    static File pickedExistingFile(@NonNull Context context, @NonNull Uri uri, CancellationSignal signal, List<CopyTransform> transforms,
+                                   PickMetadata metadata, PickMetrics.Recorder recorder) throws IOException {
+        File directory = FileConfigure.privateDirectory(context);
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+
+        //Same Uri, size and modification time means same bytes, no need to read them again
+        String sourceKey = getSourceKey(context, uri, metadata);
+        if (sourceKey != null) {
+            String fileName = preferences.getString(sourceKey, null);
+            if (fileName != null) {
+                File file = new File(directory, fileName);
+                if (file.isFile()) {
+                    if (recorder != null) {
+                        recorder.count(PickMetrics.Counter.CACHE_HITS, 1);
+                    }
+                    FileCopier.transform(file, transforms, signal);
+                    return file;
+                }
+                preferences.edit().remove(sourceKey).apply();
+            }
+        }
+
+        //The content hash rides along with the caller's transforms in the same pass
+        CopyTransform.Digest digest = newDigest();
+        ContentSniffer.Header header = new ContentSniffer.Header();
+        List<ByteSink> copyTransforms = new ArrayList<>();
+        copyTransforms.add(digest);
+        copyTransforms.add(header);
+        if (transforms != null) {
+            copyTransforms.addAll(transforms);
+        }
+        if (recorder != null) {
+            recorder.count(PickMetrics.Counter.CACHE_MISSES, 1);
+        }
+        File temporary = PickerFiles.newTemporaryFile(directory);
+        long start = recorder != null ? recorder.start() : 0;
+        long length = FileCopier.copy(context, uri, temporary, signal, copyTransforms, metadata != null ? metadata.getSize() : -1);
+        if (recorder != null) {
+            recorder.stop(PickMetrics.Stage.COPY, start);
+            recorder.count(PickMetrics.Counter.BYTES_COPIED, length);
+        }
+
+        String fileName;
+        File file;
+        boolean isStored = false;
+        try {
+            String extension = FileConfigure.resolveExtension(context, uri, header, metadata, recorder);
+            fileName = TextUtils.isEmpty(extension) ? digest.getHex() : String.format(Locale.US, "%s.%s", digest.getHex(), extension);
+            file = new File(directory, fileName);
+            if (file.isFile()) {
+                FileConfigure.deleteFile(temporary);
+            } else if (!temporary.renameTo(file)) {
+                throw new IOException("Unable to store picked file as " + fileName);
+            }
+            isStored = true;
+        } finally {
+            if (!isStored) {
+                FileConfigure.deleteFile(temporary);
+                FileCopier.abort(transforms);
+            }
+        }
+
+        if (sourceKey != null) {
+            preferences.edit().putString(sourceKey, fileName).apply();
+        }
+        return file;
+    }
+
+    public static void clear(@NonNull Context context) {
+        context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE).edit().clear().apply();
+    }
+
+    //The pick already queried the provider, only callers without metadata pay for another query
+    private static String getSourceKey(Context context, Uri uri, PickMetadata metadata) {
+        long size = -1;
+        long modified = -1;
+        if (metadata != null) {
+            size = metadata.getSize();
+            modified = metadata.getModified();
+        } else if (uri.getScheme() != null && uri.getScheme().equalsIgnoreCase(ContentResolver.SCHEME_FILE) && uri.getPath() != null) {
+            File source = new File(uri.getPath());
+            size = source.length();
+            modified = source.lastModified();
+        } else {
+            Cursor cursor = null;
+            try {
+                cursor = context.getContentResolver().query(uri, null, null, null, null);
+                if (cursor != null && cursor.moveToFirst()) {
+                    size = getLong(cursor, OpenableColumns.SIZE);
+                    for (String column : MODIFIED_COLUMNS) {
+                        modified = getLong(cursor, column);
+                        if (modified > 0) {
+                            break;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+
+        if (size <= 0 || modified <= 0) {
+            return null;
+        }
+        return String.format(Locale.US, "%s|%d|%d", uri, size, modified);
+    }
+
+    private static long getLong(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        if (index == -1 || cursor.isNull(index)) {
+            return -1;
+        }
+        return cursor.getLong(index);
+    }
+
+    private static CopyTransform.Digest newDigest() throws IOException {
+        try {
+            return new CopyTransform.Digest(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+}
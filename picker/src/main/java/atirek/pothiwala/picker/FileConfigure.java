@@ -2,88 +2,224 @@ package atirek.pothiwala.picker;
 
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.os.Environment;
 import android.preference.PreferenceManager;
+import android.text.TextUtils;
 import androidx.annotation.NonNull;
 import android.webkit.MimeTypeMap;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.Locale;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import atirek.pothiwala.picker.core.ByteSink;
+import atirek.pothiwala.picker.core.ContentSniffer;
+import atirek.pothiwala.picker.core.MimeTypes;
+import atirek.pothiwala.picker.core.PickerFiles;
 
 public class FileConfigure {
 
-    private static File privateDirectory(@NonNull Context context) {
+    //Capture files the picker created itself, the only picked files the sweeper may delete
+    private static final String CAPTURES = "picker_captures";
+    private static final String CAPTURE_PATHS = "paths";
+
+    private static final Set<String> inFlightCaptures = new HashSet<>();
+
+    static File privateDirectory(@NonNull Context context) {
         File cacheDir = context.getCacheDir();
         if (isExternalStorageWritable()) {
             cacheDir = context.getExternalCacheDir();
         }
-        File privateDir = new File(cacheDir, getFolderName(context));
-        if (!privateDir.exists()) privateDir.mkdirs();
-        return privateDir;
+        return PickerFiles.directory(cacheDir, getFolderName(context));
     }
 
     public static File getFile(@NonNull Context context, @NonNull String url) {
         File directory = privateDirectory(context);
-        String fileName = String.format(Locale.getDefault(), "%s.%s", generateRandomString(), MimeTypeMap.getFileExtensionFromUrl(url));
-        return new File(directory, fileName);
-    }
-
-    private static String generateRandomString() {
-        return UUID.randomUUID().toString();
+        return new File(directory, PickerFiles.newFileName(MimeTypeMap.getFileExtensionFromUrl(url)));
     }
 
     private static String getFolderName(@NonNull Context context) {
         return PreferenceManager.getDefaultSharedPreferences(context).getString("folder_name", null);
     }
 
-    private static String getMimeType(@NonNull Context context, @NonNull Uri uri) {
+    static String getMimeType(@NonNull Context context, @NonNull Uri uri, PickMetrics.Recorder recorder) {
+        if (recorder == null) {
+            return getMimeType(context, uri);
+        }
+        long start = recorder.start();
+        String extension = getMimeType(context, uri);
+        recorder.stop(PickMetrics.Stage.MIME_LOOKUP, start);
+        return extension;
+    }
+
+    static String getMimeType(@NonNull Context context, @NonNull Uri uri) {
+        PickerTrace.begin("picker:mimeType");
+        try {
+            return getExtension(context, uri);
+        } finally {
+            PickerTrace.end();
+        }
+    }
+
+    private static String getExtension(@NonNull Context context, @NonNull Uri uri) {
         String extension;
         //Check uri format to avoid null
         if (uri.getScheme() != null && uri.getScheme().equalsIgnoreCase(ContentResolver.SCHEME_CONTENT)) {
             //If scheme is a content
-            final MimeTypeMap mime = MimeTypeMap.getSingleton();
-            extension = mime.getExtensionFromMimeType(context.getContentResolver().getType(uri));
+            String mimeType = context.getContentResolver().getType(uri);
+            extension = getExtensionFromMimeType(mimeType);
         } else {
             //If scheme is a File
-            //This will replace white spaces with %20 and also other special characters. This will avoid returning null values on file name with spaces and special characters.
-            extension = MimeTypeMap.getFileExtensionFromUrl(Uri.fromFile(new File(uri.getPath())).toString());
-
+            extension = MimeTypes.getExtensionFromPath(uri.getPath());
+            if (extension == null) {
+                //This will replace white spaces with %20 and also other special characters. This will avoid returning null values on file name with spaces and special characters.
+                extension = MimeTypeMap.getFileExtensionFromUrl(Uri.fromFile(new File(uri.getPath())).toString());
+            }
         }
 
         return extension;
     }
 
-    private static void writeToFile(InputStream inputStream, File file) {
+    private static String getExtensionFromMimeType(String mimeType) {
+        String extension = MimeTypes.getExtension(mimeType);
+        if (extension == null) {
+            final MimeTypeMap mime = MimeTypeMap.getSingleton();
+            extension = mime.getExtensionFromMimeType(mimeType);
+        }
+        return extension;
+    }
+
+    public static File pickedExistingFile(Context context, Uri uri) throws IOException {
+        return pickedExistingFile(context, uri, null);
+    }
+
+    public static File pickedExistingFile(Context context, Uri uri, CancellationSignal signal) throws IOException {
+        return pickedExistingFile(context, uri, signal, null);
+    }
+
+    public static File pickedExistingFile(Context context, Uri uri, CancellationSignal signal, List<CopyTransform> transforms) throws IOException {
+        return pickedExistingFile(context, uri, signal, transforms, null, null);
+    }
+
+    static File pickedExistingFile(Context context, Uri uri, CancellationSignal signal, List<CopyTransform> transforms,
+                                   PickMetadata metadata, PickMetrics.Recorder recorder) throws IOException {
+        File privateFile = getPrivateFile(context, uri);
+        if (privateFile != null) {
+            //Already inside the picker folder, nothing to copy
+            FileCopier.transform(privateFile, transforms, signal);
+            return privateFile;
+        }
+        //Named once the first bytes are known, the copy itself lands in a temporary file
+        File directory = privateDirectory(context);
+        File temporary = PickerFiles.newTemporaryFile(directory);
+        ContentSniffer.Header header = new ContentSniffer.Header();
+        boolean isLinked = isFileUri(uri) && FileCopier.link(new File(uri.getPath()), temporary);
+        boolean isMoved = false;
         try {
-            OutputStream outputStream = new FileOutputStream(file);
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = inputStream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, length);
+            if (isLinked) {
+                //Keeps the sweeper off the link, it carries the source's old modification time
+                markCaptureStarted(temporary);
+                header.read(temporary);
+                FileCopier.transform(temporary, transforms, signal);
+            } else {
+                //Without transforms the copy stays zero-copy, the header is read back from the copy afterwards
+                boolean isBuffered = transforms != null && !transforms.isEmpty();
+                List<ByteSink> sinks = new ArrayList<>();
+                if (isBuffered) {
+                    sinks.add(header);
+                    sinks.addAll(transforms);
+                }
+                long start = recorder != null ? recorder.start() : 0;
+                long length = FileCopier.copy(context, uri, temporary, signal, sinks, metadata != null ? metadata.getSize() : -1);
+                if (recorder != null) {
+                    recorder.stop(PickMetrics.Stage.COPY, start);
+                    recorder.count(PickMetrics.Counter.BYTES_COPIED, length);
+                }
+                if (!isBuffered) {
+                    header.read(temporary);
+                }
+            }
+
+            File file = new File(directory, PickerFiles.newFileName(resolveExtension(context, uri, header, metadata, recorder)));
+            isMoved = temporary.renameTo(file);
+            if (!isMoved) {
+                throw new IOException("Unable to move picked file to " + file);
+            }
+            return file;
+        } finally {
+            if (isLinked) {
+                markCaptureFinished(temporary);
+            }
+            //Whatever failed, the temporary never outlives the pick
+            if (!isMoved) {
+                deleteFile(temporary);
+                FileCopier.abort(transforms);
             }
-            outputStream.close();
-            inputStream.close();
+        }
+    }
 
+    //Capture apps choose their own format, the name follows what they actually wrote
+    static File renameToContent(@NonNull File file, boolean isAudio) throws IOException {
+        ContentSniffer.Signature signature = ContentSniffer.match(file);
+        if (signature == null) {
+            return file;
+        }
+        //Audio placeholders have no extension to fall back on, so even a generic match names them
+        if (!signature.isConclusive() && !isAudio) {
+            return file;
+        }
+        String extension = signature.getExtension();
+        if (isAudio && "mp4".equals(extension)) {
+            //Recorders write generic MPEG-4 brands, audio only
+            extension = "m4a";
+        }
+        if (extension.equalsIgnoreCase(MimeTypes.getExtensionFromPath(file.getPath()))) {
+            return file;
+        }
+        File renamed = new File(file.getParentFile(), PickerFiles.newFileName(extension));
+        return file.renameTo(renamed) ? renamed : file;
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    //Sniffed from the bytes when they are conclusive, the provider is only asked otherwise
+    static String resolveExtension(@NonNull Context context, @NonNull Uri uri, @NonNull ContentSniffer.Header header,
+                                   PickMetadata metadata, PickMetrics.Recorder recorder) {
+        ContentSniffer.Signature signature = header.match();
+        if (signature != null && signature.isConclusive()) {
+            return signature.getExtension();
+        }
+        String extension = null;
+        if (metadata != null && metadata.getMimeType() != null) {
+            //Already answered by the preflight query
+            extension = getExtensionFromMimeType(metadata.getMimeType());
+        }
+        if (TextUtils.isEmpty(extension)) {
+            extension = getMimeType(context, uri, recorder);
+        }
+        if (TextUtils.isEmpty(extension) && signature != null) {
+            return signature.getExtension();
         }
+        return extension;
     }
 
-    public static File pickedExistingFile(Context context, Uri uri) throws IOException {
-        InputStream pictureInputStream = context.getContentResolver().openInputStream(uri);
-        File directory = privateDirectory(context);
-        File file = new File(directory, UUID.randomUUID().toString() + "." + getMimeType(context, uri));
-        if (file.createNewFile()) {
-            writeToFile(pictureInputStream, file);
+    static File getPrivateFile(@NonNull Context context, @NonNull Uri uri) throws IOException {
+        if (!isFileUri(uri)) {
+            return null;
         }
-        return file;
+        File source = new File(uri.getPath()).getCanonicalFile();
+        if (privateDirectory(context).getCanonicalFile().equals(source.getParentFile()) && source.isFile()) {
+            return source;
+        }
+        return null;
+    }
+
+    private static boolean isFileUri(Uri uri) {
+        return uri.getScheme() != null && uri.getScheme().equalsIgnoreCase(ContentResolver.SCHEME_FILE) && uri.getPath() != null;
     }
 
     public static void clearFiles(Context context) {
@@ -95,20 +231,68 @@ public class FileConfigure {
                 }
             }
         }
+        DedupStore.clear(context);
+        context.getSharedPreferences(CAPTURES, Context.MODE_PRIVATE).edit().clear().apply();
+        CacheManager.getInstance(context).clear();
+        ThumbnailCache.getInstance(context).clear();
+        WaveformExtractor.clear(context);
     }
 
     public static void deleteFile(File file) {
-        if (file.exists()) {
-            file.delete();
-        }
+        PickerFiles.deleteFile(file);
     }
 
     public static File generateNewFile(@NonNull Context context, @NonNull String extension) throws IOException {
-        File dir = privateDirectory(context);
-        if (!dir.exists()) {
-            dir.mkdirs();
+        return PickerFiles.newFile(privateDirectory(context), extension);
+    }
+
+    //Journaled until the capture is handed to the app, so an abandoned one can be swept after a restart
+    static File generateCaptureFile(@NonNull Context context, @NonNull String extension) throws IOException {
+        File file = generateNewFile(context, extension);
+        synchronized (CAPTURES) {
+            SharedPreferences preferences = context.getSharedPreferences(CAPTURES, Context.MODE_PRIVATE);
+            Set<String> paths = new HashSet<>(preferences.getStringSet(CAPTURE_PATHS, new HashSet<String>()));
+            paths.add(file.getAbsolutePath());
+            preferences.edit().putStringSet(CAPTURE_PATHS, paths).apply();
+        }
+        return file;
+    }
+
+    static void releaseCapture(@NonNull Context context, @NonNull File file) {
+        synchronized (CAPTURES) {
+            SharedPreferences preferences = context.getSharedPreferences(CAPTURES, Context.MODE_PRIVATE);
+            Set<String> paths = preferences.getStringSet(CAPTURE_PATHS, null);
+            if (paths != null && paths.contains(file.getAbsolutePath())) {
+                paths = new HashSet<>(paths);
+                paths.remove(file.getAbsolutePath());
+                preferences.edit().putStringSet(CAPTURE_PATHS, paths).apply();
+            }
+        }
+    }
+
+    static Set<String> getCapturePaths(@NonNull Context context) {
+        synchronized (CAPTURES) {
+            SharedPreferences preferences = context.getSharedPreferences(CAPTURES, Context.MODE_PRIVATE);
+            return new HashSet<>(preferences.getStringSet(CAPTURE_PATHS, new HashSet<String>()));
+        }
+    }
+
+    static void markCaptureStarted(@NonNull File file) {
+        synchronized (inFlightCaptures) {
+            inFlightCaptures.add(file.getAbsolutePath());
+        }
+    }
+
+    static void markCaptureFinished(@NonNull File file) {
+        synchronized (inFlightCaptures) {
+            inFlightCaptures.remove(file.getAbsolutePath());
+        }
+    }
+
+    static boolean isCaptureInFlight(@NonNull File file) {
+        synchronized (inFlightCaptures) {
+            return inFlightCaptures.contains(file.getAbsolutePath());
         }
-        return File.createTempFile(UUID.randomUUID().toString(), "." + extension, dir);
     }
 
     private static boolean isExternalStorageWritable() {
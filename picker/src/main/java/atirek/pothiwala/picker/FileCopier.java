@@ -0,0 +1,139 @@
+package atirek.pothiwala.picker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+import atirek.pothiwala.picker.core.ByteSink;
+import atirek.pothiwala.picker.core.Cancellation;
+import atirek.pothiwala.picker.core.PickerFiles;
+import atirek.pothiwala.picker.core.StreamCopier;
+
+public class FileCopier {
+
+    public static long copy(@NonNull Context context, @NonNull Uri uri, @NonNull File target) throws IOException {
+        return copy(context, uri, target, null);
+    }
+
+    public static long copy(@NonNull Context context, @NonNull Uri uri, @NonNull File target, CancellationSignal signal) throws IOException {
+        return copy(context, uri, target, signal, Collections.<CopyTransform>emptyList());
+    }
+
+    //Every transform sees the copied bytes in order and is finished before the file is moved into place
+    public static long copy(@NonNull Context context, @NonNull Uri uri, @NonNull File target, CancellationSignal signal, List<? extends ByteSink> transforms) throws IOException {
+        return copy(context, uri, target, signal, transforms, -1);
+    }
+
+    //expectedLength is the size the provider reported, -1 when unknown
+    public static long copy(@NonNull Context context, @NonNull Uri uri, @NonNull File target, CancellationSignal signal, List<? extends ByteSink> transforms,
+                            long expectedLength) throws IOException {
+        File partial = PickerFiles.partialFile(target);
+        Cancellation cancellation = toCancellation(signal);
+        PickerTrace.begin("picker:copy");
+        ContentResolver resolver = context.getContentResolver();
+        InputStream inputStream = null;
+        FileOutputStream outputStream = null;
+        boolean isCopied = false;
+        try {
+            outputStream = new FileOutputStream(partial);
+            ParcelFileDescriptor descriptor = openDescriptor(resolver, uri);
+            long length;
+            if (descriptor != null) {
+                FileInputStream descriptorStream = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+                inputStream = descriptorStream;
+                length = StreamCopier.copy(descriptorStream.getChannel(), outputStream.getChannel(), cancellation, transforms, expectedLength);
+            } else {
+                inputStream = resolver.openInputStream(uri);
+                if (inputStream == null) {
+                    throw new FileNotFoundException("Unable to open " + uri);
+                }
+                length = StreamCopier.copy(inputStream, outputStream.getChannel(), cancellation, transforms, expectedLength);
+            }
+            outputStream.close();
+            outputStream = null;
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+            StreamCopier.finish(transforms);
+
+            if (!partial.renameTo(target)) {
+                throw new IOException("Unable to move copied file to " + target);
+            }
+            isCopied = true;
+            return length;
+
+        } finally {
+            closeQuietly(inputStream);
+            closeQuietly(outputStream);
+            if (!isCopied) {
+                StreamCopier.abort(transforms);
+                FileConfigure.deleteFile(partial);
+            }
+            PickerTrace.end();
+        }
+    }
+
+    //Runs a file that needed no copy through the transforms, reading it once
+    public static long transform(@NonNull File source, List<? extends ByteSink> transforms, CancellationSignal signal) throws IOException {
+        return StreamCopier.drain(source, transforms, toCancellation(signal));
+    }
+
+    public static boolean link(@NonNull File source, @NonNull File target) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || !source.isFile()) {
+            return false;
+        }
+        try {
+            //Fails with EXDEV when the source sits on another filesystem, the caller copies instead
+            Os.link(source.getAbsolutePath(), target.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    //Also undoes transform outputs that already finished, for failures and cancels after the copy
+    static void abort(List<? extends ByteSink> transforms) {
+        StreamCopier.abort(transforms);
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        StreamCopier.closeQuietly(closeable);
+    }
+
+    private static Cancellation toCancellation(final CancellationSignal signal) {
+        if (signal == null) {
+            return null;
+        }
+        return new Cancellation() {
+            @Override
+            public void throwIfCanceled() {
+                signal.throwIfCanceled();
+            }
+        };
+    }
+
+    private static ParcelFileDescriptor openDescriptor(ContentResolver resolver, Uri uri) {
+        try {
+            return resolver.openFileDescriptor(uri, "r");
+        } catch (FileNotFoundException e) {
+            //Providers serving partial assets only support streams
+            return null;
+        }
+    }
+}
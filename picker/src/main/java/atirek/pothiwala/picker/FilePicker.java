@@ -1,11 +1,10 @@
 package atirek.pothiwala.picker;
 
 import android.app.Activity;
+import android.content.ClipData;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.os.Build;
 import android.preference.PreferenceManager;
@@ -17,9 +16,13 @@ import android.text.TextUtils;
 import android.widget.ArrayAdapter;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 public class FilePicker {
 
@@ -33,6 +36,17 @@ public class FilePicker {
         int REQUEST_DOCUMENTS = 7460;
     }
 
+    //Request codes carry the low bits of the pending entry above the base code, within the 16 bits activities allow
+    private static final int REQUEST_BASE_MASK = 0x1FFF;
+    private static final int REQUEST_TAG_SHIFT = 13;
+
+    //The Requests code a result belongs to, for apps routing onActivityResult themselves
+    public static int getBaseRequest(int requestCode) {
+        return requestCode & REQUEST_BASE_MASK;
+    }
+
+    //Every file handed to onPicked or onBatchItemPicked stays pinned against cache eviction,
+    //pass it to releasePickedFile once the app has moved or stopped using it
     public interface Callbacks {
         void onPickerError(Exception e, FileSource source);
 
@@ -41,6 +55,25 @@ public class FilePicker {
         void onCanceled(FileSource source);
     }
 
+    public interface BatchCallbacks extends Callbacks {
+        void onBatchItemPicked(File dataFile, int index, int total, FileSource source);
+
+        void onBatchItemError(Exception e, Uri uri, int index, int total, FileSource source);
+
+        void onBatchComplete(int pickedCount, int errorCount, FileSource source);
+    }
+
+    //Called with the copy transform results right before onPicked or onBatchItemPicked for the same file
+    public interface ResultCallbacks extends Callbacks {
+        void onPickedResult(CopyResult result, FileSource source);
+    }
+
+    //Gallery and document picks arrive as PickedMedia instead of onPicked, copied only on toFile; captures still use onPicked.
+    //Call release() on every handle once done with it, the copy stays pinned in the cache and a kept permission held until then
+    public interface MediaCallbacks extends Callbacks {
+        void onPickedMedia(PickedMedia media, FileSource source);
+    }
+
     public enum FileSource {
         PHOTO_CAPTURE, AUDIO_CAPTURE, VIDEO_CAPTURE, PHOTO_GALLERY, AUDIO_GALLERY, VIDEO_GALLERY, DOCUMENTS
     }
@@ -49,11 +82,34 @@ public class FilePicker {
         LOW, HIGH
     }
 
+    //ASYNC is the default, files are copied on PickerExecutor and callbacks are posted to the main thread
+    //SYNC copies on the main thread inside onActivityResult, what the picker always did before
+    public enum ResultMode {
+        SYNC, ASYNC
+    }
+
     private Activity activity;
-    private String lastFileUri = null, lastFilePath = null;
+    private PendingRequests pendingRequests;
+    private IntentResolver intentResolver;
+    private File canceledCaptureFile = null;
     private VideoQuality videoQuality = VideoQuality.LOW;
     private int durationLimit = 30;
+    //The default only goes to the capture apps, picked files are checked against limits the app set itself
+    private boolean isDurationLimitSet = false;
     private int sizeLimit = 0;
+    private ResultMode resultMode = ResultMode.ASYNC;
+    private boolean allowMultiple = false;
+    private int maxParallelCopies = 2;
+    private final PickOptions options = new PickOptions();
+    private Executor executor;
+    private final Set<PickTask> pendingTasks = new HashSet<>();
+
+    private final PickTask.OnFinishListener onTaskFinish = new PickTask.OnFinishListener() {
+        @Override
+        public void onFinish(PickTask task) {
+            pendingTasks.remove(task);
+        }
+    };
 
     public void setVideoQuality(VideoQuality videoQuality) {
         this.videoQuality = videoQuality;
@@ -61,32 +117,109 @@ public class FilePicker {
 
     public void setDurationLimit(int durationLimit) {
         this.durationLimit = durationLimit;
+        this.isDurationLimitSet = true;
     }
 
     public void setSizeLimit(int sizeLimit) {
         this.sizeLimit = sizeLimit;
     }
 
+    public void setResultMode(ResultMode resultMode) {
+        this.resultMode = resultMode;
+    }
+
+    public void setAllowMultiple(boolean allowMultiple) {
+        this.allowMultiple = allowMultiple;
+    }
+
+    //Upper bound per multi-select pick, the default executor has two threads shared by all picks,
+    //so more than two copies only run at once with an executor of that size from setExecutor
+    public void setMaxParallelCopies(int maxParallelCopies) {
+        this.maxParallelCopies = Math.max(1, maxParallelCopies);
+    }
+
+    public void setDeduplicate(boolean deduplicate) {
+        options.deduplicate = deduplicate;
+    }
+
+    public void setImageProcessor(ImageProcessor imageProcessor) {
+        options.imageProcessor = imageProcessor;
+    }
+
+    //Independent of setImageProcessor, either may be set alone and in any order
+    //Alone it decodes photos only as large as its byte target can hold, a processor adds a hard max dimension
+    public void setImageEncoder(ImageEncoder imageEncoder) {
+        options.imageEncoder = imageEncoder;
+    }
+
+    public void setCopyTransforms(CopyTransform.Factory transformFactory) {
+        options.transformFactory = transformFactory;
+    }
+
+    //Off unless set, null turns it off again
+    public void setMetrics(PickMetrics metrics) {
+        options.metrics = metrics;
+    }
+
+    public PickMetrics getMetrics() {
+        return options.metrics;
+    }
+
+    public void setCacheQuota(long quotaBytes) {
+        CacheManager.getInstance(activity).setQuota(quotaBytes);
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    //Ends the pin taken when the file was delivered, the cache quota may evict it from then on
+    public void releasePickedFile(File dataFile) {
+        CacheManager.getInstance(activity).unpin(dataFile);
+    }
+
+    public void cancelPendingPicks() {
+        for (PickTask task : pendingTasks) {
+            task.cancel();
+        }
+        pendingTasks.clear();
+    }
+
+    public boolean hasPendingPicks() {
+        return !pendingTasks.isEmpty();
+    }
+
     public FilePicker(Activity activity, String folder) {
         this.activity = activity;
+        this.pendingRequests = PendingRequests.getInstance(activity);
+        this.intentResolver = IntentResolver.getInstance(activity);
         PreferenceManager.getDefaultSharedPreferences(activity)
                 .edit().putString("folder_name", folder)
                 .apply();
+        preloadIntents();
     }
 
     public FilePicker(Fragment fragment, String folder) {
         this.activity = fragment.getActivity();
+        this.pendingRequests = PendingRequests.getInstance(activity);
+        this.intentResolver = IntentResolver.getInstance(activity);
         PreferenceManager.getDefaultSharedPreferences(activity)
                 .edit().putString("folder_name", folder)
                 .apply();
+        preloadIntents();
+    }
+
+    //Resolves every source in the background, for the permission grants and the dialog
+    private void preloadIntents() {
+        for (FileSource fileSource : FileSource.values()) {
+            intentResolver.preload(getExecutor(), fileSource, createIntent(fileSource, null));
+        }
     }
 
-    private Uri createSourceFile(String extension) throws IOException {
-        File imagePath = FileConfigure.generateNewFile(activity, extension);
+    private Uri createSourceUri(File file) {
         String authority = String.format(Locale.getDefault(), "%s.%s", activity.getPackageName(), "fileprovider");
-        Uri uri = FileProvider.getUriForFile(activity, authority, imagePath);
-        lastFileUri = uri.toString();
-        lastFilePath = imagePath.toString();
+        Uri uri = FileProvider.getUriForFile(activity, authority, file);
+        FileConfigure.markCaptureStarted(file);
         return uri;
     }
 
@@ -98,15 +231,18 @@ public class FilePicker {
             String[] mimeTypes = {"application/pdf", "application/msword"};
             intent.putExtra(Intent.EXTRA_MIME_TYPES, mimeTypes);
         }
+        putAllowMultiple(intent);
         return intent;
     }
 
-    private Intent createPhotoCaptureIntent() {
+    private Intent createPhotoCaptureIntent(Uri capturedFileUri) {
         Intent intent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
+        if (capturedFileUri == null) {
+            return intent;
+        }
         try {
-            Uri capturedFileUri = createSourceFile("jpg");
             //We have to explicitly grant the write permission since Intent.setFlag works only on API Level >=20
-            grantWritePermission(activity, intent, capturedFileUri);
+            grantWritePermission(FileSource.PHOTO_CAPTURE, intent, capturedFileUri);
 
             intent.putExtra(MediaStore.EXTRA_OUTPUT, capturedFileUri);
         } catch (Exception e) {
@@ -116,12 +252,14 @@ public class FilePicker {
         return intent;
     }
 
-    private Intent createVideoCaptureIntent() {
+    private Intent createVideoCaptureIntent(Uri capturedFileUri) {
         Intent intent = new Intent(MediaStore.ACTION_VIDEO_CAPTURE);
+        if (capturedFileUri == null) {
+            return intent;
+        }
         try {
-            Uri capturedFileUri = createSourceFile("mp4");
             //We have to explicitly grant the write permission since Intent.setFlag works only on API Level >=20
-            grantWritePermission(activity, intent, capturedFileUri);
+            grantWritePermission(FileSource.VIDEO_CAPTURE, intent, capturedFileUri);
 
             intent.putExtra(MediaStore.EXTRA_VIDEO_QUALITY, videoQuality.ordinal());
             if (durationLimit > 0){
@@ -135,12 +273,14 @@ public class FilePicker {
         return intent;
     }
 
-    private Intent createAudioCaptureIntent() {
+    private Intent createAudioCaptureIntent(Uri capturedFileUri) {
         Intent intent = new Intent(MediaStore.Audio.Media.RECORD_SOUND_ACTION);
+        if (capturedFileUri == null) {
+            return intent;
+        }
         try {
-            Uri capturedFileUri = createSourceFile("mp3");
             //We have to explicitly grant the write permission since Intent.setFlag works only on API Level >=20
-            grantWritePermission(activity, intent, capturedFileUri);
+            grantWritePermission(FileSource.AUDIO_CAPTURE, intent, capturedFileUri);
 
             if (durationLimit > 0){
                 intent.putExtra(MediaStore.EXTRA_DURATION_LIMIT, durationLimit);
@@ -158,6 +298,7 @@ public class FilePicker {
         if (sizeLimit > 0){
             intent.putExtra(MediaStore.EXTRA_SIZE_LIMIT, sizeLimit);
         }
+        putAllowMultiple(intent);
         return intent;
     }
 
@@ -169,6 +310,7 @@ public class FilePicker {
         if (durationLimit > 0){
             intent.putExtra(MediaStore.EXTRA_DURATION_LIMIT, durationLimit);
         }
+        putAllowMultiple(intent);
         return intent;
     }
 
@@ -180,16 +322,23 @@ public class FilePicker {
         if (durationLimit > 0){
             intent.putExtra(MediaStore.EXTRA_DURATION_LIMIT, durationLimit);
         }
+        putAllowMultiple(intent);
         return intent;
     }
 
-    private Intent createIntent(FileSource fileSource) {
+    private void putAllowMultiple(Intent intent) {
+        if (allowMultiple && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        }
+    }
+
+    private Intent createIntent(FileSource fileSource, Uri capturedFileUri) {
         if (fileSource == FileSource.PHOTO_CAPTURE) {
-            return createPhotoCaptureIntent();
+            return createPhotoCaptureIntent(capturedFileUri);
         } else if (fileSource == FileSource.AUDIO_CAPTURE) {
-            return createAudioCaptureIntent();
+            return createAudioCaptureIntent(capturedFileUri);
         } else if (fileSource == FileSource.VIDEO_CAPTURE) {
-            return createVideoCaptureIntent();
+            return createVideoCaptureIntent(capturedFileUri);
         } else if (fileSource == FileSource.PHOTO_GALLERY) {
             return createPhotoGalleyIntent();
         } else if (fileSource == FileSource.AUDIO_GALLERY) {
@@ -202,21 +351,46 @@ public class FilePicker {
     }
 
     public void openPicker(FileSource fileSource) {
-        Intent intent = createIntent(fileSource);
-        activity.startActivityForResult(intent, getRequest(fileSource));
+        int requestId = PickerTrace.nextRequestId();
+        File capturedFile = null;
+        Uri capturedFileUri = null;
+        Intent intent;
+        PickerTrace.begin("picker:createIntent", requestId);
+        try {
+            if (isCapture(fileSource)) {
+                try {
+                    capturedFile = FileConfigure.generateCaptureFile(activity, getCaptureExtension(fileSource));
+                    capturedFileUri = createSourceUri(capturedFile);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    capturedFile = null;
+                }
+            }
+            intent = createIntent(fileSource, capturedFileUri);
+        } finally {
+            PickerTrace.end();
+        }
+        //Journaled before leaving, the process may be gone by the time the result comes back
+        PendingRequests.Entry entry = pendingRequests.add(fileSource, capturedFileUri != null ? capturedFileUri.toString() : null, capturedFile,
+                requestId, options.metrics != null ? PickMetrics.now() : 0);
+        PickerTrace.beginAsync("picker:roundTrip", requestId);
+        activity.startActivityForResult(intent, getRequest(fileSource) | entry.getTag() << REQUEST_TAG_SHIFT);
     }
 
     public void openPickerDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(activity);
         builder.setTitle("Select an action");
+        String[] titles = {"Capture Photo", "Record Audio", "Record Video", "Photo Gallery", "Audio Gallery", "Video Gallery", "Document"};
         final ArrayAdapter<String> arrayAdapter = new ArrayAdapter<>(activity, R.layout.cell_picker);
-        arrayAdapter.add("Capture Photo");
-        arrayAdapter.add("Record Audio");
-        arrayAdapter.add("Record Video");
-        arrayAdapter.add("Photo Gallery");
-        arrayAdapter.add("Audio Gallery");
-        arrayAdapter.add("Video Gallery");
-        arrayAdapter.add("Document");
+        final List<FileSource> fileSources = new ArrayList<>();
+        for (FileSource fileSource : FileSource.values()) {
+            //Hides sources no installed app handles, keeps those still being resolved
+            Boolean isAvailable = intentResolver.isAvailable(fileSource);
+            if (isAvailable == null || isAvailable) {
+                arrayAdapter.add(titles[fileSource.ordinal()]);
+                fileSources.add(fileSource);
+            }
+        }
 
         builder.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
             @Override
@@ -228,57 +402,101 @@ public class FilePicker {
         builder.setAdapter(arrayAdapter, new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int position) {
-                if (position == FileSource.PHOTO_CAPTURE.ordinal()) {
-                    openPicker(FileSource.PHOTO_CAPTURE);
-                } if (position == FileSource.AUDIO_CAPTURE.ordinal()) {
-                    openPicker(FileSource.AUDIO_CAPTURE);
-                } if (position == FileSource.VIDEO_CAPTURE.ordinal()) {
-                    openPicker(FileSource.VIDEO_CAPTURE);
-                } else if (position == FileSource.PHOTO_GALLERY.ordinal()) {
-                    openPicker(FileSource.PHOTO_GALLERY);
-                } else if (position == FileSource.AUDIO_GALLERY.ordinal()) {
-                    openPicker(FileSource.AUDIO_GALLERY);
-                } else if (position == FileSource.VIDEO_GALLERY.ordinal()) {
-                    openPicker(FileSource.VIDEO_GALLERY);
-                } else {
-                    openPicker(FileSource.DOCUMENTS);
-                }
+                openPicker(fileSources.get(position));
             }
         });
         builder.show();
     }
 
-    private void onFilePick(Intent data, FileSource fileSource, Callbacks callbacks) {
-        try {
-            Uri filePath = data.getData();
-            File dataFile = FileConfigure.pickedExistingFile(activity, filePath);
-            callbacks.onPicked(dataFile, fileSource);
-        } catch (Exception e) {
-            e.printStackTrace();
-            callbacks.onPickerError(e, fileSource);
+    private void onFilePick(Intent data, FileSource fileSource, Callbacks callbacks, int requestId) {
+        List<Uri> filePaths = getPickedUris(data);
+        if (filePaths.isEmpty()) {
+            Exception exception = new IllegalStateException("Unable to pick file, no data returned.");
+            if (options.metrics != null) {
+                options.metrics.increment(fileSource, PickMetrics.Counter.ERRORS, 1);
+            }
+            callbacks.onPickerError(exception, fileSource);
+            return;
         }
+
+        startTask(filePaths, fileSource, callbacks, requestId);
     }
 
-    private void onCapture(FileSource fileSource, Callbacks callbacks) {
-        try {
-            if (!TextUtils.isEmpty(lastFileUri)) {
-                revokeWritePermission(activity, Uri.parse(lastFileUri));
+    private void startTask(List<Uri> filePaths, FileSource fileSource, Callbacks callbacks, int requestId) {
+        PickOptions taskOptions = options.copy();
+        //Same limits the intents ask for, captures already got theirs as extras and are never queried
+        if (fileSource == FileSource.PHOTO_GALLERY || fileSource == FileSource.VIDEO_GALLERY || fileSource == FileSource.AUDIO_GALLERY) {
+            taskOptions.sizeLimit = sizeLimit;
+        }
+        if (isDurationLimitSet && (fileSource == FileSource.VIDEO_GALLERY || fileSource == FileSource.AUDIO_GALLERY)) {
+            taskOptions.durationLimit = durationLimit;
+        }
+        taskOptions.lazy = callbacks instanceof MediaCallbacks && !isCapture(fileSource);
+        PickTask task = new PickTask(activity, filePaths, fileSource, callbacks, taskOptions, resultMode == ResultMode.ASYNC, requestId, onTaskFinish);
+        if (resultMode == ResultMode.SYNC) {
+            task.run();
+        } else {
+            pendingTasks.add(task);
+            task.start(getExecutor(), maxParallelCopies);
+        }
+    }
+
+    private static List<Uri> getPickedUris(Intent data) {
+        List<Uri> uris = new ArrayList<>();
+        if (data == null) {
+            return uris;
+        }
+        ClipData clipData = data.getClipData();
+        if (clipData != null) {
+            for (int i = 0; i < clipData.getItemCount(); i++) {
+                Uri uri = clipData.getItemAt(i).getUri();
+                if (uri != null) {
+                    uris.add(uri);
+                }
             }
+        }
+        if (uris.isEmpty() && data.getData() != null) {
+            uris.add(data.getData());
+        }
+        return uris;
+    }
 
+    private Executor getExecutor() {
+        if (executor == null) {
+            executor = PickerExecutor.getDefault();
+        }
+        return executor;
+    }
+
+    private void onCapture(Intent data, PendingRequests.Entry entry, FileSource fileSource, Callbacks callbacks, int requestId) {
+        try {
             File dataFile = null;
-            if (lastFilePath != null) {
-                dataFile = new File(lastFilePath);
+            if (entry != null) {
+                if (!TextUtils.isEmpty(entry.getUri())) {
+                    revokeWritePermission(activity, Uri.parse(entry.getUri()));
+                }
+                dataFile = entry.getFile();
+            }
+            if (dataFile != null) {
+                FileConfigure.markCaptureFinished(dataFile);
+                //From here on it is either the app's file or deleted, never the sweeper's
+                FileConfigure.releaseCapture(activity, dataFile);
             }
 
-            if (dataFile == null) {
+            if ((dataFile == null || dataFile.length() == 0) && data != null && data.getData() != null) {
+                //Sound recorders tend to ignore EXTRA_OUTPUT and return their own Uri instead
+                if (dataFile != null) {
+                    FileConfigure.deleteFile(dataFile);
+                }
+                startTask(Collections.singletonList(data.getData()), fileSource, callbacks, requestId);
+            } else if (dataFile == null) {
                 Exception exception = new IllegalStateException("Unable to capture photo / video from camera.");
                 callbacks.onPickerError(exception, fileSource);
             } else {
-                callbacks.onPicked(dataFile, fileSource);
+                startTask(Collections.singletonList(Uri.fromFile(dataFile)), fileSource, callbacks, requestId);
             }
 
-            lastFilePath = null;
-            lastFileUri = null;
+            canceledCaptureFile = null;
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -289,7 +507,7 @@ public class FilePicker {
     public void handleActivityResult(int requestCode, int resultCode, Intent data, Callbacks callbacks) {
 
         boolean isRequested = false;
-        switch (requestCode) {
+        switch (requestCode >>> REQUEST_TAG_SHIFT > PendingRequests.TAG_MASK ? 0 : getBaseRequest(requestCode)) {
             case Requests.REQUEST_PHOTO_CAPTURE:
             case Requests.REQUEST_AUDIO_CAPTURE:
             case Requests.REQUEST_VIDEO_CAPTURE:
@@ -301,23 +519,48 @@ public class FilePicker {
         }
 
         if (isRequested) {
-            FileSource fileSource = getFileSource(requestCode);
+            FileSource fileSource = getFileSource(getBaseRequest(requestCode));
+            //The exact request that came back, picks of one source may finish out of order
+            PendingRequests.Entry entry = pendingRequests.remove(fileSource, requestCode >>> REQUEST_TAG_SHIFT);
+            recordRoundTrip(fileSource, entry);
+            int requestId = entry != null ? entry.getTraceId() : 0;
+            if (requestId != 0) {
+                PickerTrace.endAsync("picker:roundTrip", requestId);
+            } else {
+                //Opened before the process was recreated
+                requestId = PickerTrace.nextRequestId();
+            }
             if (resultCode == Activity.RESULT_OK) {
-                if (fileSource != FileSource.PHOTO_CAPTURE && fileSource != FileSource.AUDIO_CAPTURE && fileSource != FileSource.VIDEO_CAPTURE) {
-                    onFilePick(data, fileSource, callbacks);
+                if (!isCapture(fileSource)) {
+                    onFilePick(data, fileSource, callbacks, requestId);
                 } else {
-                    onCapture(fileSource, callbacks);
+                    onCapture(data, entry, fileSource, callbacks, requestId);
                 }
 
             } else {
+                if (entry != null && entry.getFile() != null) {
+                    if (!TextUtils.isEmpty(entry.getUri())) {
+                        revokeWritePermission(activity, Uri.parse(entry.getUri()));
+                    }
+                    FileConfigure.markCaptureFinished(entry.getFile());
+                    canceledCaptureFile = entry.getFile();
+                }
                 callbacks.onCanceled(fileSource);
             }
         }
     }
 
+    private void recordRoundTrip(FileSource fileSource, PendingRequests.Entry entry) {
+        //Lost when the process was recreated while the other app was open
+        long openTime = entry != null ? entry.getOpenTime() : 0;
+        if (options.metrics != null && openTime > 0) {
+            options.metrics.record(fileSource, PickMetrics.Stage.ROUND_TRIP, PickMetrics.now() - openTime);
+        }
+    }
+
     public File lastlyTakenButCanceledPhoto() {
-        if (lastFilePath == null) return null;
-        File file = new File(lastFilePath);
+        if (canceledCaptureFile == null) return null;
+        File file = canceledCaptureFile;
         if (file.exists()) {
             return file;
         } else {
@@ -329,14 +572,37 @@ public class FilePicker {
         context.revokeUriPermission(uri, Intent.FLAG_GRANT_WRITE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
     }
 
-    private static void grantWritePermission(Context context, Intent intent, Uri uri) {
-        List<ResolveInfo> resInfoList = context.getPackageManager().queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY);
-        for (ResolveInfo resolveInfo : resInfoList) {
-            String packageName = resolveInfo.activityInfo.packageName;
-            context.grantUriPermission(packageName, uri, Intent.FLAG_GRANT_WRITE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+    private void grantWritePermission(FileSource fileSource, Intent intent, Uri uri) {
+        PickerTrace.begin("picker:grantWritePermission");
+        try {
+            //Usually preloaded by the constructor, so the tap to the camera makes no PackageManager call
+            for (String packageName : intentResolver.getPackages(fileSource, intent)) {
+                activity.grantUriPermission(packageName, uri, Intent.FLAG_GRANT_WRITE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            }
+        } finally {
+            PickerTrace.end();
+        }
+    }
+
+    private static String getCaptureExtension(FileSource fileSource) {
+        if (fileSource == FileSource.PHOTO_CAPTURE) {
+            return "jpg";
+        } else if (fileSource == FileSource.VIDEO_CAPTURE) {
+            return "mp4";
+        } else {
+            //Recorders pick their own container, the name comes from the content once it is back
+            return "";
         }
     }
 
+    static boolean isCapture(FileSource fileSource) {
+        return fileSource == FileSource.PHOTO_CAPTURE || fileSource == FileSource.AUDIO_CAPTURE || fileSource == FileSource.VIDEO_CAPTURE;
+    }
+
+    static boolean isPhoto(FileSource fileSource) {
+        return fileSource == FileSource.PHOTO_CAPTURE || fileSource == FileSource.PHOTO_GALLERY;
+    }
+
     private static int getRequest(FileSource fileSource) {
         switch (fileSource) {
             case PHOTO_CAPTURE:
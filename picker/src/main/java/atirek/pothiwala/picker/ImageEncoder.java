@@ -0,0 +1,235 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+public class ImageEncoder {
+
+    public static class OverBudgetException extends IOException {
+
+        private final long encodedBytes;
+        private final long targetBytes;
+
+        OverBudgetException(long encodedBytes, long targetBytes) {
+            super(String.format(Locale.US, "Smallest encoding is %d bytes, the target is %d.", encodedBytes, targetBytes));
+            this.encodedBytes = encodedBytes;
+            this.targetBytes = targetBytes;
+        }
+
+        public long getEncodedBytes() {
+            return encodedBytes;
+        }
+
+        public long getTargetBytes() {
+            return targetBytes;
+        }
+    }
+
+    public enum Format {
+        JPEG, WEBP
+    }
+
+    private static final int MAX_ATTEMPTS = 7;
+    private static final int MIN_DIMENSION = 320;
+    //Photos rarely get below about two bits per pixel at a usable quality, more pixels than this cannot fit
+    private static final int PIXELS_PER_BYTE = 4;
+
+    private final long targetBytes;
+    private Format format = Format.JPEG;
+    private int minQuality = 30;
+    private int maxQuality = 92;
+    private boolean isOverBudgetFailed = false;
+    private int lastQuality = -1;
+    private long lastEncodedBytes = -1;
+    private boolean isLastOverBudget = false;
+
+    public ImageEncoder(long targetBytes) {
+        this.targetBytes = targetBytes;
+    }
+
+    public void setFormat(@NonNull Format format) {
+        this.format = format;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void setQualityRange(int minQuality, int maxQuality) {
+        this.minQuality = Math.max(0, Math.min(minQuality, maxQuality));
+        this.maxQuality = Math.min(100, Math.max(minQuality, maxQuality));
+    }
+
+    //Fails encode with an OverBudgetException instead of keeping the smallest encoding that did not fit
+    public void setFailOverBudget(boolean isOverBudgetFailed) {
+        this.isOverBudgetFailed = isOverBudgetFailed;
+    }
+
+    //True when even the lowest quality at the smallest allowed size did not fit the target
+    public synchronized boolean isLastOverBudget() {
+        return isLastOverBudget;
+    }
+
+    public synchronized int getLastQuality() {
+        return lastQuality;
+    }
+
+    public synchronized long getLastEncodedBytes() {
+        return lastEncodedBytes;
+    }
+
+    public String getExtension() {
+        return format == Format.WEBP ? "webp" : "jpg";
+    }
+
+    public String getMimeType() {
+        return format == Format.WEBP ? "image/webp" : "image/jpeg";
+    }
+
+    //Largest side worth decoding for the budget, zero when the full size may fit
+    public int getMaxDimension(int width, int height) {
+        long pixels = (long) width * height;
+        if (targetBytes <= 0 || pixels <= targetBytes * PIXELS_PER_BYTE) {
+            return 0;
+        }
+        double scale = Math.sqrt((double) targetBytes * PIXELS_PER_BYTE / pixels);
+        return Math.max(MIN_DIMENSION, (int) (Math.max(width, height) * scale));
+    }
+
+    //True when the file is already in this format and within budget
+    public boolean accepts(@NonNull File file, String mimeType) {
+        return getMimeType().equals(mimeType) && (targetBytes <= 0 || file.length() <= targetBytes);
+    }
+
+    public File encode(@NonNull Context context, @NonNull Bitmap bitmap) throws IOException {
+        EncodeBuffer best = new EncodeBuffer();
+        EncodeBuffer attempt = new EncodeBuffer();
+        int quality = search(bitmap, best, attempt);
+
+        //Even the lowest quality is over budget, trade resolution for bytes once
+        Bitmap scaled = null;
+        if (quality == -1 && targetBytes > 0) {
+            scaled = scaleToBudget(bitmap, best.size());
+            if (scaled != null) {
+                quality = search(scaled, best, attempt);
+            }
+        }
+        if (scaled != null) {
+            scaled.recycle();
+        }
+        boolean isOverBudget = quality == -1;
+        if (isOverBudget) {
+            quality = minQuality;
+        }
+
+        synchronized (this) {
+            lastQuality = quality;
+            lastEncodedBytes = best.size();
+            isLastOverBudget = isOverBudget;
+        }
+        if (isOverBudget && isOverBudgetFailed) {
+            throw new OverBudgetException(best.size(), targetBytes);
+        }
+        return write(context, best);
+    }
+
+    //Binary search over quality, keeping the largest encoding that fits; returns -1 when none fits
+    private int search(Bitmap bitmap, EncodeBuffer best, EncodeBuffer attempt) throws IOException {
+        Bitmap.CompressFormat compressFormat = getCompressFormat();
+        compress(bitmap, compressFormat, maxQuality, best);
+        if (targetBytes <= 0 || best.size() <= targetBytes) {
+            return maxQuality;
+        }
+
+        int low = minQuality;
+        int high = maxQuality - 1;
+        int found = -1;
+        boolean isMinTried = false;
+        for (int i = 0; i < MAX_ATTEMPTS && low <= high; i++) {
+            int quality = (low + high) >>> 1;
+            compress(bitmap, compressFormat, quality, attempt);
+            if (attempt.size() <= targetBytes) {
+                found = quality;
+                best.swap(attempt);
+                low = quality + 1;
+            } else {
+                if (found == -1 && quality == minQuality) {
+                    //Keep the smallest encoding around in case nothing fits
+                    best.swap(attempt);
+                    isMinTried = true;
+                }
+                high = quality - 1;
+            }
+        }
+        if (found == -1 && !isMinTried) {
+            compress(bitmap, compressFormat, minQuality, best);
+            if (best.size() <= targetBytes) {
+                found = minQuality;
+            }
+        }
+        return found;
+    }
+
+    private Bitmap scaleToBudget(Bitmap bitmap, long encodedBytes) {
+        double ratio = Math.sqrt((double) targetBytes / encodedBytes) * 0.9;
+        int width = (int) (bitmap.getWidth() * ratio);
+        int height = (int) (bitmap.getHeight() * ratio);
+        if (Math.max(width, height) < MIN_DIMENSION) {
+            return null;
+        }
+        return Bitmap.createScaledBitmap(bitmap, width, height, true);
+    }
+
+    private void compress(Bitmap bitmap, Bitmap.CompressFormat compressFormat, int quality, EncodeBuffer buffer) throws IOException {
+        buffer.reset();
+        if (!bitmap.compress(compressFormat, quality, buffer)) {
+            throw new IOException("Unable to encode image as " + format);
+        }
+    }
+
+    private File write(Context context, EncodeBuffer buffer) throws IOException {
+        File file = FileConfigure.generateNewFile(context, getExtension());
+        OutputStream outputStream = null;
+        boolean isWritten = false;
+        try {
+            outputStream = new FileOutputStream(file);
+            buffer.writeTo(outputStream);
+            isWritten = true;
+            return file;
+        } finally {
+            FileCopier.closeQuietly(outputStream);
+            if (!isWritten) {
+                FileConfigure.deleteFile(file);
+            }
+        }
+    }
+
+    private Bitmap.CompressFormat getCompressFormat() {
+        return format == Format.WEBP ? Bitmap.CompressFormat.WEBP : Bitmap.CompressFormat.JPEG;
+    }
+
+    private static class EncodeBuffer extends ByteArrayOutputStream {
+
+        EncodeBuffer() {
+            super(64 * 1024);
+        }
+
+        //Exchanges backing arrays so a kept result never has to be copied
+        void swap(EncodeBuffer other) {
+            byte[] buffer = buf;
+            int size = count;
+            buf = other.buf;
+            count = other.count;
+            other.buf = buffer;
+            other.count = size;
+        }
+    }
+}
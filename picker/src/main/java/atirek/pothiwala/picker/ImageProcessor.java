@@ -0,0 +1,225 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class ImageProcessor {
+
+    private static final int JPEG_QUALITY = 90;
+
+    private final int maxDimension;
+    private Bitmap.Config config = Bitmap.Config.ARGB_8888;
+    private ImageEncoder encoder;
+    private long peakBitmapBytes = 0;
+
+    public ImageProcessor(int maxDimension) {
+        this.maxDimension = maxDimension;
+    }
+
+    public void setPreferredConfig(@NonNull Bitmap.Config config) {
+        this.config = config;
+    }
+
+    public void setEncoder(ImageEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    public ImageEncoder getEncoder() {
+        return encoder;
+    }
+
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    //Largest amount of bitmap memory held at once by any process() call so far
+    public synchronized long getPeakBitmapBytes() {
+        return peakBitmapBytes;
+    }
+
+    public long estimateBitmapBytes(@NonNull File source) throws IOException {
+        BitmapFactory.Options options = decodeBounds(source);
+        int sampleSize = getSampleSize(options.outWidth, options.outHeight, encoder);
+        long pixels = (long) (options.outWidth / sampleSize) * (options.outHeight / sampleSize);
+        //A rotated copy of the sampled bitmap may be alive alongside it
+        return pixels * getBytesPerPixel(config) * 2;
+    }
+
+    public File process(@NonNull Context context, @NonNull File source) throws IOException {
+        return process(context, source, encoder);
+    }
+
+    //With the given encoder instead of the one set on this processor, null writes the source format
+    public File process(@NonNull Context context, @NonNull File source, ImageEncoder encoder) throws IOException {
+        BitmapFactory.Options options = decodeBounds(source);
+        int orientation = getOrientation(source);
+        boolean isEncoded = encoder == null || encoder.accepts(source, options.outMimeType);
+        int sampleSize = getSampleSize(options.outWidth, options.outHeight, isEncoded ? null : encoder);
+        if (sampleSize == 1 && orientation == ExifInterface.ORIENTATION_NORMAL && isEncoded) {
+            return source;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(source.getAbsolutePath(), options);
+        } catch (OutOfMemoryError e) {
+            //The pick fails like any other unreadable image instead of taking the worker down
+            throw new IOException("Not enough memory to decode image " + source.getName(), e);
+        }
+        if (bitmap == null) {
+            throw new IOException("Unable to decode image " + source.getName());
+        }
+        long bitmapBytes = getByteCount(bitmap);
+
+        Matrix matrix = getOrientationMatrix(orientation);
+        if (matrix != null) {
+            //Rotates the already sampled bitmap, never the full size original
+            Bitmap oriented;
+            try {
+                oriented = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+            } catch (OutOfMemoryError e) {
+                bitmap.recycle();
+                throw new IOException("Not enough memory to rotate image " + source.getName(), e);
+            }
+            if (oriented != bitmap) {
+                bitmapBytes += getByteCount(oriented);
+                bitmap.recycle();
+                bitmap = oriented;
+            }
+        }
+        updatePeak(bitmapBytes);
+
+        try {
+            if (encoder != null) {
+                return encoder.encode(context, bitmap);
+            }
+            boolean isPng = "image/png".equals(options.outMimeType);
+            return write(context, bitmap, isPng);
+        } catch (OutOfMemoryError e) {
+            //Scaling to a budget allocates further bitmaps
+            throw new IOException("Not enough memory to encode image " + source.getName(), e);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private File write(Context context, Bitmap bitmap, boolean isPng) throws IOException {
+        File file = FileConfigure.generateNewFile(context, isPng ? "png" : "jpg");
+        OutputStream outputStream = null;
+        boolean isWritten = false;
+        try {
+            outputStream = new FileOutputStream(file);
+            Bitmap.CompressFormat format = isPng ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+            if (!bitmap.compress(format, JPEG_QUALITY, outputStream)) {
+                throw new IOException("Unable to encode image " + file.getName());
+            }
+            isWritten = true;
+            return file;
+        } finally {
+            FileCopier.closeQuietly(outputStream);
+            if (!isWritten) {
+                FileConfigure.deleteFile(file);
+            }
+        }
+    }
+
+    private synchronized void updatePeak(long bitmapBytes) {
+        if (bitmapBytes > peakBitmapBytes) {
+            peakBitmapBytes = bitmapBytes;
+        }
+    }
+
+    private int getSampleSize(int width, int height, ImageEncoder encoder) {
+        int sampleSize = 1;
+        int largest = Math.max(width, height);
+        if (maxDimension > 0) {
+            while (largest / sampleSize > maxDimension) {
+                sampleSize *= 2;
+            }
+        }
+        //Pixels the budget cannot keep are never decoded, the encoder only scales down what is left
+        int budgetDimension = encoder != null ? encoder.getMaxDimension(width, height) : 0;
+        if (budgetDimension > 0) {
+            while (largest / (sampleSize * 2) >= budgetDimension) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
+    private static BitmapFactory.Options decodeBounds(File source) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unable to read image bounds of " + source.getName());
+        }
+        return options;
+    }
+
+    private static int getOrientation(File source) {
+        try {
+            ExifInterface exif = new ExifInterface(source.getAbsolutePath());
+            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static Matrix getOrientationMatrix(int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return null;
+        }
+        return matrix;
+    }
+
+    private static long getByteCount(Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
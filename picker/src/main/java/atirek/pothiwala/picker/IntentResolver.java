@@ -0,0 +1,143 @@
+package atirek.pothiwala.picker;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+//Packages able to handle each picker intent, resolved once off the main thread and dropped when apps change
+class IntentResolver {
+
+    private static IntentResolver instance;
+
+    static synchronized IntentResolver getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new IntentResolver(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final Context context;
+    private final Map<FilePicker.FileSource, List<String>> packages = new EnumMap<>(FilePicker.FileSource.class);
+    private final Set<FilePicker.FileSource> loading = EnumSet.noneOf(FilePicker.FileSource.class);
+    //What each source was resolved from, so a package change can resolve it again right away
+    private final Map<FilePicker.FileSource, Intent> intents = new EnumMap<>(FilePicker.FileSource.class);
+    private Executor executor;
+    //Bumped on every package change, so a resolve that raced with one is not cached
+    private int generation = 0;
+
+    private IntentResolver(Context context) {
+        this.context = context;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+    }
+
+    void invalidate() {
+        Map<FilePicker.FileSource, Intent> reload;
+        Executor reloadExecutor;
+        synchronized (this) {
+            generation++;
+            packages.clear();
+            loading.clear();
+            reload = new EnumMap<>(intents);
+            reloadExecutor = executor;
+        }
+        if (reloadExecutor != null) {
+            for (Map.Entry<FilePicker.FileSource, Intent> entry : reload.entrySet()) {
+                preload(reloadExecutor, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    void preload(@NonNull Executor executor, @NonNull final FilePicker.FileSource source, @NonNull final Intent intent) {
+        final int resolveGeneration;
+        synchronized (this) {
+            this.executor = executor;
+            intents.put(source, intent);
+            if (packages.containsKey(source) || !loading.add(source)) {
+                return;
+            }
+            resolveGeneration = generation;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    store(source, query(intent), resolveGeneration);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                loading.remove(source);
+            }
+        }
+    }
+
+    //Cached when possible, otherwise resolved on the calling thread like before
+    List<String> getPackages(@NonNull FilePicker.FileSource source, @NonNull Intent intent) {
+        int resolveGeneration;
+        synchronized (this) {
+            List<String> cached = packages.get(source);
+            if (cached != null) {
+                return cached;
+            }
+            intents.put(source, intent);
+            resolveGeneration = generation;
+        }
+        List<String> resolved = query(intent);
+        store(source, resolved, resolveGeneration);
+        return resolved;
+    }
+
+    //Null until resolved, callers should treat that as available
+    synchronized Boolean isAvailable(@NonNull FilePicker.FileSource source) {
+        List<String> cached = packages.get(source);
+        return cached != null ? !cached.isEmpty() : null;
+    }
+
+    private synchronized void store(FilePicker.FileSource source, List<String> resolved, int resolveGeneration) {
+        if (resolveGeneration != generation) {
+            return;
+        }
+        loading.remove(source);
+        packages.put(source, resolved);
+    }
+
+    private List<String> query(Intent intent) {
+        PickerTrace.begin("picker:resolveIntent");
+        try {
+            List<ResolveInfo> resolveInfos = context.getPackageManager().queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY);
+            List<String> packageNames = new ArrayList<>(resolveInfos.size());
+            for (ResolveInfo resolveInfo : resolveInfos) {
+                if (!packageNames.contains(resolveInfo.activityInfo.packageName)) {
+                    packageNames.add(resolveInfo.activityInfo.packageName);
+                }
+            }
+            return Collections.unmodifiableList(packageNames);
+        } finally {
+            PickerTrace.end();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package atirek.pothiwala.picker;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import atirek.pothiwala.picker.core.ShortRingBuffer;
+
+class PcmCapture {
+
+    interface Listener {
+        void onChunk(short[] samples, int length);
+
+        void onOverrun(long droppedSamples, long overrunCount);
+
+        void onError(String error);
+    }
+
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final int BUFFER_SECONDS = 2;
+
+    private final File outputFile;
+    private final int sampleRate;
+    private final int chunkSize;
+    private final Listener listener;
+    private final ShortRingBuffer ringBuffer;
+
+    private AudioRecord audioRecord;
+    private Thread producer;
+    private Thread consumer;
+    private volatile boolean isRunning = false;
+    //Guarded by this, set once the consumer has written the header and both threads are done
+    private boolean isStopped = false;
+    private Runnable onStopped;
+
+    PcmCapture(@NonNull File outputFile, int sampleRate, int chunkSize, @NonNull Listener listener) {
+        this.outputFile = outputFile;
+        this.sampleRate = sampleRate;
+        this.chunkSize = chunkSize;
+        this.listener = listener;
+        this.ringBuffer = new ShortRingBuffer(Math.max(sampleRate * BUFFER_SECONDS, chunkSize * 4));
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    ShortRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    void start() throws IOException {
+        int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferSize <= 0) {
+            throw new IOException("Unsupported sample rate " + sampleRate);
+        }
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate, AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT, Math.max(minBufferSize, chunkSize * 2 * 2));
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+            audioRecord = null;
+            throw new IOException("Unable to initialize AudioRecord");
+        }
+
+        RandomAccessFile output = null;
+        try {
+            output = new RandomAccessFile(outputFile, "rw");
+            output.setLength(0);
+            output.seek(WAV_HEADER_SIZE);
+
+            isRunning = true;
+            audioRecord.startRecording();
+        } catch (IOException | RuntimeException e) {
+            isRunning = false;
+            FileCopier.closeQuietly(output);
+            audioRecord.release();
+            audioRecord = null;
+            throw e instanceof IOException ? (IOException) e : new IOException("Unable to start AudioRecord: " + e.getMessage());
+        }
+
+        final RandomAccessFile consumerOutput = output;
+        consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume(consumerOutput);
+            }
+        }, "picker-pcm-consumer");
+        producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                produce();
+            }
+        }, "picker-pcm-producer");
+        consumer.start();
+        producer.start();
+    }
+
+    //Only signals the threads, onStopped runs on the consumer thread once the file is complete
+    void stop(Runnable onStopped) {
+        boolean isDone;
+        synchronized (this) {
+            isRunning = false;
+            isDone = isStopped || consumer == null;
+            if (!isDone) {
+                this.onStopped = onStopped;
+            }
+        }
+        if (isDone) {
+            if (onStopped != null) {
+                onStopped.run();
+            }
+            return;
+        }
+        LockSupport.unpark(consumer);
+    }
+
+    private void produce() {
+        short[] samples = new short[chunkSize];
+        try {
+            while (isRunning) {
+                int count = audioRecord.read(samples, 0, samples.length);
+                if (count < 0) {
+                    listener.onError("AudioRecord read failed with " + count);
+                    break;
+                }
+                if (count > 0) {
+                    ringBuffer.write(samples, 0, count);
+                    LockSupport.unpark(consumer);
+                }
+            }
+        } finally {
+            //The producer owns the recorder once started, it is released on this thread
+            audioRecord.stop();
+            audioRecord.release();
+            audioRecord = null;
+            isRunning = false;
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void consume(RandomAccessFile output) {
+        //The chunk array is reused, listeners must copy samples they keep
+        short[] chunk = new short[chunkSize];
+        ByteBuffer bytes = ByteBuffer.allocateDirect(chunkSize * 2).order(ByteOrder.LITTLE_ENDIAN);
+        FileChannel channel = output.getChannel();
+        long reportedOverruns = 0;
+        long dataBytes = 0;
+        try {
+            while (true) {
+                boolean isFinal = !isRunning;
+                if (ringBuffer.available() < chunkSize && !isFinal) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(20));
+                    continue;
+                }
+
+                int count = ringBuffer.read(chunk, 0, chunkSize);
+                if (count > 0) {
+                    listener.onChunk(chunk, count);
+                    bytes.clear();
+                    bytes.asShortBuffer().put(chunk, 0, count);
+                    bytes.limit(count * 2);
+                    while (bytes.hasRemaining()) {
+                        dataBytes += channel.write(bytes);
+                    }
+                }
+
+                long overruns = ringBuffer.getOverrunCount();
+                if (overruns != reportedOverruns) {
+                    reportedOverruns = overruns;
+                    listener.onOverrun(ringBuffer.getDroppedSamples(), overruns);
+                }
+
+                if (isFinal && ringBuffer.available() == 0) {
+                    break;
+                }
+            }
+            writeWavHeader(output, dataBytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+            listener.onError(e.getMessage());
+        } finally {
+            FileCopier.closeQuietly(output);
+            isRunning = false;
+            join(producer);
+            Runnable callback;
+            synchronized (this) {
+                isStopped = true;
+                callback = onStopped;
+                onStopped = null;
+            }
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+
+    private void writeWavHeader(RandomAccessFile output, long dataBytes) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'R', 'I', 'F', 'F'});
+        header.putInt((int) (dataBytes + WAV_HEADER_SIZE - 8));
+        header.put(new byte[]{'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+        header.putInt(16);
+        header.putShort((short) 1);
+        header.putShort((short) 1);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * 2);
+        header.putShort((short) 2);
+        header.putShort((short) 16);
+        header.put(new byte[]{'d', 'a', 't', 'a'});
+        header.putInt((int) dataBytes);
+        output.seek(0);
+        output.write(header.array());
+    }
+
+    private static void join(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//Picks waiting for the other app, journaled so a capture survives the process being killed meanwhile
+class PendingRequests {
+
+    static class Entry {
+        private final int id;
+        private final FilePicker.FileSource source;
+        private final long createdAt;
+        private final String uri;
+        private final String path;
+        //Only known to the process that opened the picker, zero once restored from the journal
+        private int traceId = 0;
+        private long openTime = 0;
+
+        private Entry(int id, FilePicker.FileSource source, long createdAt, String uri, String path) {
+            this.id = id;
+            this.source = source;
+            this.createdAt = createdAt;
+            this.uri = uri;
+            this.path = path;
+        }
+
+        //FileProvider Uri handed to the capture app, null for gallery picks
+        String getUri() {
+            return uri;
+        }
+
+        File getFile() {
+            return path != null ? new File(path) : null;
+        }
+
+        int getTraceId() {
+            return traceId;
+        }
+
+        long getOpenTime() {
+            return openTime;
+        }
+
+        //Low bits of the id, what fits into the request code next to the source
+        int getTag() {
+            return id & TAG_MASK;
+        }
+    }
+
+    static final int TAG_MASK = 0x7;
+
+    private static final String PREFERENCES = "picker_pending";
+    //Same as the sweeper's stale age, nobody comes back for a capture after that
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static PendingRequests instance;
+
+    static synchronized PendingRequests getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PendingRequests(context);
+        }
+        return instance;
+    }
+
+    private final SharedPreferences preferences;
+    //Insertion ordered, the last entry of a source is its newest
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>();
+    private int nextId = 1;
+
+    private PendingRequests(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        load();
+    }
+
+    synchronized Entry add(@NonNull FilePicker.FileSource source, String uri, File file, int traceId, long openTime) {
+        Entry entry = new Entry(nextId++, source, System.currentTimeMillis(), uri, file != null ? file.getAbsolutePath() : null);
+        entry.traceId = traceId;
+        entry.openTime = openTime;
+        entries.put(entry.id, entry);
+        //apply is enough, pending writes are flushed when the activity stops for the other app
+        preferences.edit().putString(String.valueOf(entry.id), encode(entry)).apply();
+        return entry;
+    }
+
+    //The newest entry of the source with that tag, tags only repeat after TAG_MASK + 1 requests
+    synchronized Entry remove(@NonNull FilePicker.FileSource source, int tag) {
+        Entry newest = null;
+        for (Entry entry : entries.values()) {
+            if (entry.source == source && entry.getTag() == tag) {
+                newest = entry;
+            }
+        }
+        if (newest != null) {
+            entries.remove(newest.id);
+            preferences.edit().remove(String.valueOf(newest.id)).apply();
+        }
+        return newest;
+    }
+
+    synchronized boolean isPending(@NonNull File file) {
+        String path = file.getAbsolutePath();
+        for (Entry entry : entries.values()) {
+            if (path.equals(entry.path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void load() {
+        long now = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        List<Entry> loaded = new ArrayList<>();
+        for (Map.Entry<String, ?> item : preferences.getAll().entrySet()) {
+            Entry entry = decode(item.getKey(), item.getValue());
+            if (entry == null || now - entry.createdAt > MAX_AGE_MILLIS) {
+                expired.add(item.getKey());
+            } else {
+                loaded.add(entry);
+            }
+        }
+        //Preferences come back unordered, the ids keep the order they were opened in
+        Collections.sort(loaded, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry first, Entry second) {
+                return first.id < second.id ? -1 : (first.id == second.id ? 0 : 1);
+            }
+        });
+        for (Entry entry : loaded) {
+            entries.put(entry.id, entry);
+            nextId = Math.max(nextId, entry.id + 1);
+        }
+        if (!expired.isEmpty()) {
+            SharedPreferences.Editor editor = preferences.edit();
+            for (String key : expired) {
+                editor.remove(key);
+            }
+            editor.apply();
+        }
+    }
+
+    private static String encode(Entry entry) {
+        //The path goes last, it is the only part that may hold the separator
+        return String.format(Locale.US, "%s|%d|%s|%s", entry.source.name(), entry.createdAt,
+                entry.uri != null ? entry.uri : "", entry.path != null ? entry.path : "");
+    }
+
+    private static Entry decode(String key, Object value) {
+        if (!(value instanceof String)) {
+            return null;
+        }
+        String[] parts = ((String) value).split("\\|", 4);
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new Entry(Integer.parseInt(key), FilePicker.FileSource.valueOf(parts[0]), Long.parseLong(parts[1]),
+                    parts[2].isEmpty() ? null : parts[2], parts[3].isEmpty() ? null : parts[3]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
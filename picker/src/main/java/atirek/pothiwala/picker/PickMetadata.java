@@ -0,0 +1,141 @@
+package atirek.pothiwala.picker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import atirek.pothiwala.picker.core.MimeTypes;
+
+//What the provider knows about a Uri before any of its bytes are read
+public class PickMetadata {
+
+    public static class LimitExceededException extends IOException {
+
+        private final PickMetadata metadata;
+
+        LimitExceededException(String message, PickMetadata metadata) {
+            super(message);
+            this.metadata = metadata;
+        }
+
+        public PickMetadata getMetadata() {
+            return metadata;
+        }
+    }
+
+    private static final String[] PROJECTION = {
+            OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE, MediaStore.MediaColumns.MIME_TYPE
+    };
+    //DocumentsContract.Document.COLUMN_LAST_MODIFIED, MediaStore calls it date_modified
+    private static final String LAST_MODIFIED = "last_modified";
+
+    private final String displayName;
+    private final long size;
+    private final String mimeType;
+    private final long durationMillis;
+    private final long modified;
+
+    private PickMetadata(String displayName, long size, String mimeType, long durationMillis, long modified) {
+        this.displayName = displayName;
+        this.size = size;
+        this.mimeType = mimeType;
+        this.durationMillis = durationMillis;
+        this.modified = modified;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    //-1 when the provider does not tell
+    public long getSize() {
+        return size;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    //-1 when the provider does not tell
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    //Only comparable between queries of the same provider, -1 when it does not tell
+    public long getModified() {
+        return modified;
+    }
+
+    //One query for everything the pick needs up front, unknown values stay empty
+    public static PickMetadata query(@NonNull Context context, @NonNull Uri uri, boolean withDuration) {
+        if (uri.getScheme() != null && uri.getScheme().equalsIgnoreCase(ContentResolver.SCHEME_FILE) && uri.getPath() != null) {
+            File file = new File(uri.getPath());
+            return new PickMetadata(file.getName(), file.isFile() ? file.length() : -1,
+                    MimeTypes.getMimeType(MimeTypes.getExtensionFromPath(file.getPath())), -1, file.lastModified());
+        }
+
+        //MediaStore fails the whole query on columns it does not have, so only ask it for its own
+        String modifiedColumn = MediaStore.AUTHORITY.equals(uri.getAuthority()) ? MediaStore.MediaColumns.DATE_MODIFIED : LAST_MODIFIED;
+        String[] projection = withDuration
+                ? new String[]{PROJECTION[0], PROJECTION[1], PROJECTION[2], modifiedColumn, MediaStore.Video.VideoColumns.DURATION}
+                : new String[]{PROJECTION[0], PROJECTION[1], PROJECTION[2], modifiedColumn};
+
+        PickerTrace.begin("picker:metadata");
+        Cursor cursor = null;
+        try {
+            try {
+                cursor = context.getContentResolver().query(uri, projection, null, null, null);
+            } catch (RuntimeException e) {
+                //Images have no duration and some providers no modification time, try again with the basics
+                cursor = context.getContentResolver().query(uri, PROJECTION, null, null, null);
+            }
+            if (cursor != null && cursor.moveToFirst()) {
+                return new PickMetadata(getString(cursor, OpenableColumns.DISPLAY_NAME), getLong(cursor, OpenableColumns.SIZE),
+                        getString(cursor, MediaStore.MediaColumns.MIME_TYPE), getLong(cursor, MediaStore.Video.VideoColumns.DURATION),
+                        getLong(cursor, modifiedColumn));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            PickerTrace.end();
+        }
+        return new PickMetadata(null, -1, null, -1, -1);
+    }
+
+    //Limits of zero or less are off, values the provider does not know always pass
+    void checkLimits(long sizeLimit, int durationLimit) throws LimitExceededException {
+        if (sizeLimit > 0 && size > sizeLimit) {
+            throw new LimitExceededException(String.format(Locale.US, "Picked file is %d bytes, the limit is %d.", size, sizeLimit), this);
+        }
+        if (durationLimit > 0 && durationMillis > durationLimit * 1000L) {
+            throw new LimitExceededException(String.format(Locale.US, "Picked media is %d ms long, the limit is %d s.", durationMillis, durationLimit), this);
+        }
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        if (index == -1 || cursor.isNull(index)) {
+            return null;
+        }
+        return cursor.getString(index);
+    }
+
+    private static long getLong(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        if (index == -1 || cursor.isNull(index)) {
+            return -1;
+        }
+        return cursor.getLong(index);
+    }
+}
@@ -0,0 +1,191 @@
+package atirek.pothiwala.picker;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Fixed-size counters and histograms per source, recording never allocates so it can stay on in production
+public class PickMetrics {
+
+    public enum Stage {
+        //openPicker until the result arrives, time spent in the other app
+        ROUND_TRIP,
+        //Provider query for name, size, type and duration ahead of the copy
+        METADATA,
+        MIME_LOOKUP,
+        COPY,
+        PROCESS,
+        //One item from the start of its pick until the file is ready
+        PICK
+    }
+
+    public enum Counter {
+        PICKED, ERRORS, BYTES_COPIED, CACHE_HITS, CACHE_MISSES
+    }
+
+    //Called on the thread that recorded the value, keep it cheap
+    public interface Listener {
+        void onStageTimed(FilePicker.FileSource source, Stage stage, long durationMicros);
+    }
+
+    public interface Exporter {
+        void onCounter(FilePicker.FileSource source, Counter counter, long value);
+
+        //bucketCounts is reused between calls, copy it to keep it
+        void onHistogram(FilePicker.FileSource source, Stage stage, long count, long totalMicros, long maxMicros, long[] bucketCounts);
+    }
+
+    //Bucket 0 holds values under 1 ms, bucket i values under 2^i ms, the last one everything longer
+    public static final int BUCKET_COUNT = 20;
+
+    private static final int COUNT = 0;
+    private static final int TOTAL = 1;
+    private static final int MAX = 2;
+    private static final int BUCKETS = 3;
+    private static final int HISTOGRAM_SIZE = BUCKETS + BUCKET_COUNT;
+    private static final int SOURCE_COUNT = FilePicker.FileSource.values().length;
+    private static final int STAGE_COUNT = Stage.values().length;
+    private static final int COUNTER_COUNT = Counter.values().length;
+
+    private final AtomicLongArray histograms = new AtomicLongArray(SOURCE_COUNT * STAGE_COUNT * HISTOGRAM_SIZE);
+    private final AtomicLongArray counters = new AtomicLongArray(SOURCE_COUNT * COUNTER_COUNT);
+    private volatile Listener listener;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void record(@NonNull FilePicker.FileSource source, @NonNull Stage stage, long durationMicros) {
+        int offset = histogramOffset(source, stage);
+        histograms.incrementAndGet(offset + COUNT);
+        histograms.addAndGet(offset + TOTAL, durationMicros);
+        long max;
+        do {
+            max = histograms.get(offset + MAX);
+        } while (durationMicros > max && !histograms.compareAndSet(offset + MAX, max, durationMicros));
+        histograms.incrementAndGet(offset + BUCKETS + getBucket(durationMicros));
+
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onStageTimed(source, stage, durationMicros);
+        }
+    }
+
+    public void increment(@NonNull FilePicker.FileSource source, @NonNull Counter counter, long delta) {
+        counters.addAndGet(source.ordinal() * COUNTER_COUNT + counter.ordinal(), delta);
+    }
+
+    public long getCounter(@NonNull FilePicker.FileSource source, @NonNull Counter counter) {
+        return counters.get(source.ordinal() * COUNTER_COUNT + counter.ordinal());
+    }
+
+    public long getStageCount(@NonNull FilePicker.FileSource source, @NonNull Stage stage) {
+        return histograms.get(histogramOffset(source, stage) + COUNT);
+    }
+
+    public long getStageTotalMicros(@NonNull FilePicker.FileSource source, @NonNull Stage stage) {
+        return histograms.get(histogramOffset(source, stage) + TOTAL);
+    }
+
+    public long getStageMaxMicros(@NonNull FilePicker.FileSource source, @NonNull Stage stage) {
+        return histograms.get(histogramOffset(source, stage) + MAX);
+    }
+
+    //Upper bound of the bucket holding the given percentile, as precise as the buckets are
+    public long getPercentileMillis(@NonNull FilePicker.FileSource source, @NonNull Stage stage, double percentile) {
+        int offset = histogramOffset(source, stage);
+        long count = histograms.get(offset + COUNT);
+        if (count == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100d);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += histograms.get(offset + BUCKETS + bucket);
+            if (seen >= Math.max(1, threshold)) {
+                return getBucketUpperBoundMillis(bucket);
+            }
+        }
+        return getBucketUpperBoundMillis(BUCKET_COUNT - 1);
+    }
+
+    public long getBytesPerSecond(@NonNull FilePicker.FileSource source) {
+        long micros = getStageTotalMicros(source, Stage.COPY);
+        if (micros == 0) {
+            return 0;
+        }
+        return getCounter(source, Counter.BYTES_COPIED) * 1000000L / micros;
+    }
+
+    public static long getBucketUpperBoundMillis(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public void export(@NonNull Exporter exporter) {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        for (FilePicker.FileSource source : FilePicker.FileSource.values()) {
+            for (Counter counter : Counter.values()) {
+                exporter.onCounter(source, counter, getCounter(source, counter));
+            }
+            for (Stage stage : Stage.values()) {
+                int offset = histogramOffset(source, stage);
+                for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                    bucketCounts[bucket] = histograms.get(offset + BUCKETS + bucket);
+                }
+                exporter.onHistogram(source, stage, histograms.get(offset + COUNT), histograms.get(offset + TOTAL),
+                        histograms.get(offset + MAX), bucketCounts);
+            }
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < histograms.length(); i++) {
+            histograms.set(i, 0);
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    private static int histogramOffset(FilePicker.FileSource source, Stage stage) {
+        return (source.ordinal() * STAGE_COUNT + stage.ordinal()) * HISTOGRAM_SIZE;
+    }
+
+    private static int getBucket(long durationMicros) {
+        long millis = durationMicros / 1000;
+        if (millis <= 0) {
+            return 0;
+        }
+        //Values in [2^(i-1), 2^i) ms land in bucket i
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    static long now() {
+        return System.nanoTime() / 1000;
+    }
+
+    //Binds the metrics to one pick so the pipeline only carries a single nullable reference
+    static class Recorder {
+
+        private final PickMetrics metrics;
+        private final FilePicker.FileSource source;
+
+        Recorder(@NonNull PickMetrics metrics, @NonNull FilePicker.FileSource source) {
+            this.metrics = metrics;
+            this.source = source;
+        }
+
+        long start() {
+            return now();
+        }
+
+        void stop(Stage stage, long startMicros) {
+            metrics.record(source, stage, now() - startMicros);
+        }
+
+        void count(Counter counter, long delta) {
+            metrics.increment(source, counter, delta);
+        }
+    }
+}
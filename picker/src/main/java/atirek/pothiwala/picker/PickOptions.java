@@ -0,0 +1,29 @@
+package atirek.pothiwala.picker;
+
+class PickOptions {
+
+    boolean deduplicate = false;
+    ImageProcessor imageProcessor;
+    //Wins over the processor's own encoder, works without a processor too, sampled down to what its budget can hold
+    ImageEncoder imageEncoder;
+    CopyTransform.Factory transformFactory;
+    PickMetrics metrics;
+    //Checked against the provider's metadata before copying, zero or less is off
+    long sizeLimit = 0;
+    int durationLimit = 0;
+    //Delivers PickedMedia handles instead of copies
+    boolean lazy = false;
+
+    PickOptions copy() {
+        PickOptions options = new PickOptions();
+        options.deduplicate = deduplicate;
+        options.imageProcessor = imageProcessor;
+        options.imageEncoder = imageEncoder;
+        options.transformFactory = transformFactory;
+        options.metrics = metrics;
+        options.sizeLimit = sizeLimit;
+        options.durationLimit = durationLimit;
+        options.lazy = lazy;
+        return options;
+    }
+}
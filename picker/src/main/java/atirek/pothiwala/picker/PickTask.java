@@ -0,0 +1,323 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class PickTask implements Runnable {
+
+    interface OnFinishListener {
+        void onFinish(PickTask task);
+    }
+
+    private final Context context;
+    private final List<Uri> uris;
+    private final FilePicker.FileSource fileSource;
+    private final FilePicker.Callbacks callbacks;
+    private final PickOptions options;
+    private final boolean isAsync;
+    private final boolean isBatch;
+    private final int requestId;
+    private final OnFinishListener listener;
+    private final PickMetrics.Recorder recorder;
+    private final CancellationSignal signal = new CancellationSignal();
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicInteger remainingCount;
+    private final AtomicInteger pickedCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    PickTask(@NonNull Context context, @NonNull List<Uri> uris, @NonNull FilePicker.FileSource fileSource,
+             @NonNull FilePicker.Callbacks callbacks, @NonNull PickOptions options, boolean isAsync, int requestId, OnFinishListener listener) {
+        this.context = context.getApplicationContext();
+        this.uris = uris;
+        this.fileSource = fileSource;
+        this.callbacks = callbacks;
+        this.options = options;
+        this.isAsync = isAsync;
+        this.isBatch = uris.size() > 1 && callbacks instanceof FilePicker.BatchCallbacks;
+        this.requestId = requestId;
+        this.listener = listener;
+        this.remainingCount = new AtomicInteger(uris.size());
+        this.recorder = options.metrics != null ? new PickMetrics.Recorder(options.metrics, fileSource) : null;
+    }
+
+    void start(@NonNull Executor executor, int parallelism) {
+        PickerTrace.beginAsync("picker:task", requestId);
+        //Each lane pulls the next item only after finishing its current copy, so at most parallelism copies run at once
+        int lanes = Math.max(1, Math.min(parallelism, uris.size()));
+        for (int i = 0; i < lanes; i++) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                if (i == 0) {
+                    failRemaining(e);
+                }
+                break;
+            }
+        }
+    }
+
+    void cancel() {
+        signal.cancel();
+    }
+
+    @Override
+    public void run() {
+        if (nextIndex.get() == 0 && !isAsync) {
+            PickerTrace.beginAsync("picker:task", requestId);
+        }
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < uris.size()) {
+            pickItem(index);
+        }
+    }
+
+    //Also runs later from PickedMedia.toFile, on the caller's thread
+    static File pick(Context context, Uri uri, FilePicker.FileSource fileSource, PickOptions options, PickMetadata metadata,
+                     List<CopyTransform> transforms, CancellationSignal signal, PickMetrics.Recorder recorder, int requestId) throws IOException {
+        return pick(context, uri, fileSource, options, metadata, transforms, signal, recorder, requestId, null);
+    }
+
+    //isDisposable[0] tells whether the returned file is this pick's own, deduplicated files are shared with other picks
+    private static File pick(Context context, Uri uri, FilePicker.FileSource fileSource, PickOptions options, PickMetadata metadata,
+                             List<CopyTransform> transforms, CancellationSignal signal, PickMetrics.Recorder recorder, int requestId,
+                             boolean[] isDisposableResult) throws IOException {
+        boolean isProcessed = (options.imageProcessor != null || options.imageEncoder != null) && FilePicker.isPhoto(fileSource);
+        //Transforms describe the delivered file, a processed photo feeds them after processing instead
+        List<CopyTransform> copyTransforms = isProcessed ? null : transforms;
+
+        File dataFile = FileConfigure.getPrivateFile(context, uri);
+        boolean isDisposable;
+        if (dataFile != null) {
+            //Capture output, nobody else has seen it yet
+            isDisposable = FilePicker.isCapture(fileSource);
+            if (isDisposable) {
+                dataFile = FileConfigure.renameToContent(dataFile, fileSource == FilePicker.FileSource.AUDIO_CAPTURE);
+            }
+            FileCopier.transform(dataFile, copyTransforms, signal);
+        } else {
+            if (options.deduplicate) {
+                dataFile = DedupStore.pickedExistingFile(context, uri, signal, copyTransforms, metadata, recorder);
+                isDisposable = false;
+            } else {
+                dataFile = FileConfigure.pickedExistingFile(context, uri, signal, copyTransforms, metadata, recorder);
+                isDisposable = true;
+            }
+        }
+
+        if (isProcessed) {
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+            long start = recorder != null ? recorder.start() : 0;
+            //An encoder alone re-encodes at full size, only fixing the orientation
+            ImageProcessor processor = options.imageProcessor != null ? options.imageProcessor : new ImageProcessor(0);
+            ImageEncoder encoder = options.imageEncoder != null ? options.imageEncoder : processor.getEncoder();
+            File processed;
+            PickerTrace.begin("picker:process", requestId);
+            try {
+                processed = processor.process(context, dataFile, encoder);
+            } catch (IOException | RuntimeException e) {
+                if (isDisposable) {
+                    FileConfigure.deleteFile(dataFile);
+                }
+                throw e;
+            } finally {
+                PickerTrace.end();
+            }
+            if (recorder != null) {
+                recorder.stop(PickMetrics.Stage.PROCESS, start);
+            }
+            if (!processed.equals(dataFile)) {
+                if (isDisposable) {
+                    FileConfigure.deleteFile(dataFile);
+                }
+                isDisposable = true;
+            }
+            dataFile = processed;
+            FileCopier.transform(dataFile, transforms, signal);
+        }
+        if (isDisposableResult != null) {
+            isDisposableResult[0] = isDisposable;
+        }
+        return dataFile;
+    }
+
+    //Rejects picks over the limits before a single byte is read, the pickers rarely honor them
+    private PickMetadata preflight(Uri uri) throws IOException {
+        long start = recorder != null ? recorder.start() : 0;
+        PickMetadata metadata = PickMetadata.query(context, uri, options.durationLimit > 0);
+        if (recorder != null) {
+            recorder.stop(PickMetrics.Stage.METADATA, start);
+        }
+        metadata.checkLimits(options.sizeLimit, options.durationLimit);
+        return metadata;
+    }
+
+    private void pickItem(final int index) {
+        final Uri uri = uris.get(index);
+        PickerTrace.begin("picker:item", requestId);
+        try {
+            signal.throwIfCanceled();
+            long start = recorder != null ? recorder.start() : 0;
+            //Captures are already private files, only existing content is worth checking
+            PickMetadata metadata = FileConfigure.getPrivateFile(context, uri) == null ? preflight(uri) : null;
+            if (options.lazy) {
+                pickMedia(uri, metadata, start);
+            } else {
+                pickFile(index, uri, metadata, start);
+            }
+
+        } catch (OperationCanceledException e) {
+            //Canceled items are dropped silently
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            onItemFailed(index, e);
+        } finally {
+            PickerTrace.end();
+            //Even an Error must not leave the task pending forever
+            onItemDone();
+        }
+    }
+
+    private void pickFile(final int index, Uri uri, PickMetadata metadata, long start) throws IOException {
+        final List<CopyTransform> transforms = options.transformFactory != null ? options.transformFactory.create(uri, fileSource) : null;
+        final boolean[] isDisposable = new boolean[1];
+        final File dataFile = pick(context, uri, fileSource, options, metadata, transforms, signal, recorder, requestId, isDisposable);
+        final CopyResult result = new CopyResult(dataFile, transforms);
+        if (recorder != null) {
+            recorder.stop(PickMetrics.Stage.PICK, start);
+            recorder.count(PickMetrics.Counter.PICKED, 1);
+        }
+        pickedCount.incrementAndGet();
+
+        //Handed to the caller, keep it out of eviction until unpinned
+        final CacheManager cacheManager = CacheManager.getInstance(context);
+        cacheManager.pin(dataFile);
+        cacheManager.register(dataFile, fileSource.name());
+
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                if (callbacks instanceof FilePicker.ResultCallbacks) {
+                    ((FilePicker.ResultCallbacks) callbacks).onPickedResult(result, fileSource);
+                }
+                if (isBatch) {
+                    ((FilePicker.BatchCallbacks) callbacks).onBatchItemPicked(dataFile, index, uris.size(), fileSource);
+                } else {
+                    callbacks.onPicked(dataFile, fileSource);
+                }
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                cacheManager.unpin(dataFile);
+                //Canceled after the copy, nobody will ever see this file or what the transforms wrote
+                FileCopier.abort(transforms);
+                if (isDisposable[0]) {
+                    cacheManager.remove(dataFile);
+                    FileConfigure.deleteFile(dataFile);
+                }
+            }
+        });
+    }
+
+    //Hands over the Uri itself, the copy waits for PickedMedia.toFile
+    private void pickMedia(Uri uri, PickMetadata metadata, long start) {
+        final PickedMedia media = new PickedMedia(context, uri, fileSource, options, metadata, recorder, requestId);
+        if (recorder != null) {
+            recorder.stop(PickMetrics.Stage.PICK, start);
+            recorder.count(PickMetrics.Counter.PICKED, 1);
+        }
+        pickedCount.incrementAndGet();
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                ((FilePicker.MediaCallbacks) callbacks).onPickedMedia(media, fileSource);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                media.release();
+            }
+        });
+    }
+
+    private void failRemaining(Exception e) {
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < uris.size()) {
+            onItemFailed(index, e);
+            onItemDone();
+        }
+    }
+
+    private void onItemFailed(final int index, final Exception e) {
+        errorCount.incrementAndGet();
+        if (recorder != null) {
+            recorder.count(PickMetrics.Counter.ERRORS, 1);
+        }
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                if (isBatch) {
+                    ((FilePicker.BatchCallbacks) callbacks).onBatchItemError(e, uris.get(index), index, uris.size(), fileSource);
+                } else {
+                    callbacks.onPickerError(e, fileSource);
+                }
+            }
+        }, null);
+    }
+
+    private void onItemDone() {
+        if (remainingCount.decrementAndGet() != 0) {
+            return;
+        }
+        PickerTrace.endAsync("picker:task", requestId);
+        Runnable finish = new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) {
+                    listener.onFinish(PickTask.this);
+                }
+                if (isBatch && !signal.isCanceled()) {
+                    ((FilePicker.BatchCallbacks) callbacks).onBatchComplete(pickedCount.get(), errorCount.get(), fileSource);
+                }
+            }
+        };
+        if (isAsync) {
+            PickerExecutor.postToMain(finish);
+        } else {
+            finish.run();
+        }
+    }
+
+    private void deliver(final Runnable result, final Runnable dropped) {
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                //A canceled pick never reaches the callbacks, its host may already be gone
+                if (!signal.isCanceled()) {
+                    result.run();
+                } else if (dropped != null) {
+                    dropped.run();
+                }
+            }
+        };
+        if (isAsync) {
+            PickerExecutor.postToMain(delivery);
+        } else {
+            delivery.run();
+        }
+    }
+}
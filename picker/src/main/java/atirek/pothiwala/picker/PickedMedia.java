@@ -0,0 +1,132 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+//A picked Uri that is only copied into the picker folder when a File is really needed
+public class PickedMedia {
+
+    private final Context context;
+    private final Uri uri;
+    private final FilePicker.FileSource source;
+    private final PickOptions options;
+    private final PickMetadata metadata;
+    private final PickMetrics.Recorder recorder;
+    private final int requestId;
+    private boolean isPermissionKept = false;
+    private CopyResult result;
+    //Pinned from toResult until release, the cache must not evict a file the app is holding
+    private File pinnedFile;
+
+    PickedMedia(@NonNull Context context, @NonNull Uri uri, @NonNull FilePicker.FileSource source, @NonNull PickOptions options,
+                PickMetadata metadata, PickMetrics.Recorder recorder, int requestId) {
+        this.context = context.getApplicationContext();
+        this.uri = uri;
+        this.source = source;
+        this.options = options;
+        this.metadata = metadata;
+        this.recorder = recorder;
+        this.requestId = requestId;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public FilePicker.FileSource getSource() {
+        return source;
+    }
+
+    public PickMetadata getMetadata() {
+        return metadata;
+    }
+
+    //Reads straight from the provider, nothing is copied
+    public InputStream openStream() throws IOException {
+        InputStream inputStream = context.getContentResolver().openInputStream(uri);
+        if (inputStream == null) {
+            throw new FileNotFoundException("Unable to open " + uri);
+        }
+        return inputStream;
+    }
+
+    public ParcelFileDescriptor openFileDescriptor() throws FileNotFoundException {
+        return context.getContentResolver().openFileDescriptor(uri, "r");
+    }
+
+    public File toFile() throws IOException {
+        return toResult(null).getFile();
+    }
+
+    public File toFile(CancellationSignal signal) throws IOException {
+        return toResult(signal).getFile();
+    }
+
+    //Copies once, later calls get the same file until release; blocks, keep it off the main thread
+    public synchronized CopyResult toResult(CancellationSignal signal) throws IOException {
+        if (result != null && result.getFile().isFile()) {
+            return result;
+        }
+        List<CopyTransform> transforms = null;
+        if (options.transformFactory != null) {
+            transforms = options.transformFactory.create(uri, source);
+        }
+        File dataFile = PickTask.pick(context, uri, source, options, metadata, transforms, signal, recorder, requestId);
+        CacheManager cacheManager = CacheManager.getInstance(context);
+        //Pinned before registering, registering may trim the cache
+        cacheManager.pin(dataFile);
+        cacheManager.register(dataFile, source.name());
+        if (pinnedFile != null) {
+            cacheManager.unpin(pinnedFile);
+        }
+        pinnedFile = dataFile;
+        result = new CopyResult(dataFile, transforms);
+        return result;
+    }
+
+    //The result grant ends with the activity, only documents offering a persistable grant can outlive it
+    public synchronized boolean keepPermission() {
+        if (isPermissionKept) {
+            return true;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return false;
+        }
+        try {
+            context.getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            isPermissionKept = true;
+        } catch (SecurityException e) {
+            //Not persistable, the temporary grant still covers this session
+            isPermissionKept = false;
+        }
+        return isPermissionKept;
+    }
+
+    //Lets the cache evict the copy and gives up a kept permission, the handle cannot be read after that
+    public synchronized void release() {
+        if (pinnedFile != null) {
+            CacheManager.getInstance(context).unpin(pinnedFile);
+            pinnedFile = null;
+        }
+        result = null;
+        if (isPermissionKept && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            isPermissionKept = false;
+            try {
+                context.getContentResolver().releasePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            } catch (SecurityException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
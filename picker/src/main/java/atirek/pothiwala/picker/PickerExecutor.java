@@ -0,0 +1,90 @@
+package atirek.pothiwala.picker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PickerExecutor {
+
+    private static final int IO_THREADS = 2;
+    private static final int THUMBNAIL_THREADS = 2;
+    //Bounded so a runaway caller gets a RejectedExecutionException instead of an ever growing backlog
+    private static final int IO_QUEUE_SIZE = 64;
+    private static final int THUMBNAIL_QUEUE_SIZE = 128;
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private static Executor ioExecutor;
+    private static Executor thumbnailExecutor;
+    private static Handler mainHandler;
+
+    public static synchronized Executor getDefault() {
+        if (ioExecutor == null) {
+            ioExecutor = newPool(IO_THREADS, IO_QUEUE_SIZE, "picker-io");
+        }
+        return ioExecutor;
+    }
+
+    //Its own lane, a grid of thumbnails must not queue up behind picks being copied
+    public static synchronized Executor getThumbnails() {
+        if (thumbnailExecutor == null) {
+            thumbnailExecutor = newPool(THUMBNAIL_THREADS, THUMBNAIL_QUEUE_SIZE, "picker-thumbnail");
+        }
+        return thumbnailExecutor;
+    }
+
+    private static Executor newPool(int threads, int queueSize, String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueSize),
+                new IoThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public static void postToMain(@NonNull Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            getMainHandler().post(runnable);
+        }
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    private static class IoThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        IoThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, String.format(Locale.US, "%s-%d", name, count.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package atirek.pothiwala.picker;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Systrace/Perfetto sections, off by default; every call is a single volatile read while disabled
+public class PickerTrace {
+
+    //Trace.TRACE_TAG_APP, what Trace.beginSection uses
+    private static final long TRACE_TAG_APP = 1L << 12;
+    private static final int MAX_NAME_LENGTH = 127;
+    //Build.VERSION_CODES.Q, newer than the compile SDK
+    private static final int ASYNC_SECTION_API = 29;
+
+    private static final AtomicInteger requestIds = new AtomicInteger();
+    private static volatile boolean isEnabled = false;
+    private static boolean isAsyncResolved = false;
+    private static Method asyncBegin;
+    private static Method asyncEnd;
+
+    //Toggle between traces, not while sections are open
+    public static void setEnabled(boolean enabled) {
+        isEnabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    public static boolean isEnabled() {
+        return isEnabled;
+    }
+
+    //Ties the sections of one pick together, also used as the async section cookie
+    static int nextRequestId() {
+        return requestIds.incrementAndGet();
+    }
+
+    static void begin(String name) {
+        if (isEnabled) {
+            Trace.beginSection(trim(name));
+        }
+    }
+
+    static void begin(String name, int requestId) {
+        if (isEnabled) {
+            Trace.beginSection(trim(name + " #" + requestId));
+        }
+    }
+
+    static void end() {
+        if (isEnabled) {
+            Trace.endSection();
+        }
+    }
+
+    //Async sections may end on another thread, name and cookie must match the begin call
+    static void beginAsync(String name, int requestId) {
+        if (isEnabled) {
+            invokeAsync(true, name, requestId);
+        }
+    }
+
+    static void endAsync(String name, int requestId) {
+        if (isEnabled) {
+            invokeAsync(false, name, requestId);
+        }
+    }
+
+    private static void invokeAsync(boolean isBegin, String name, int requestId) {
+        Method method;
+        synchronized (PickerTrace.class) {
+            resolveAsync();
+            method = isBegin ? asyncBegin : asyncEnd;
+        }
+        if (method == null) {
+            return;
+        }
+        try {
+            if (Build.VERSION.SDK_INT >= ASYNC_SECTION_API) {
+                method.invoke(null, trim(name), requestId);
+            } else {
+                method.invoke(null, TRACE_TAG_APP, trim(name), requestId);
+            }
+        } catch (Exception e) {
+            //Blocked on this device, keep the plain sections
+            e.printStackTrace();
+            synchronized (PickerTrace.class) {
+                asyncBegin = null;
+                asyncEnd = null;
+            }
+        }
+    }
+
+    private static void resolveAsync() {
+        if (isAsyncResolved) {
+            return;
+        }
+        isAsyncResolved = true;
+        try {
+            if (Build.VERSION.SDK_INT >= ASYNC_SECTION_API) {
+                asyncBegin = Trace.class.getMethod("beginAsyncSection", String.class, int.class);
+                asyncEnd = Trace.class.getMethod("endAsyncSection", String.class, int.class);
+            } else {
+                asyncBegin = Trace.class.getMethod("asyncTraceBegin", long.class, String.class, int.class);
+                asyncEnd = Trace.class.getMethod("asyncTraceEnd", long.class, String.class, int.class);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            asyncBegin = null;
+            asyncEnd = null;
+        }
+    }
+
+    private static String trim(String name) {
+        return name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name;
+    }
+}
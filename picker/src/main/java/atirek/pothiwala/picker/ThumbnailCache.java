@@ -0,0 +1,416 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.pdf.PdfRenderer;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.util.LruCache;
+import android.webkit.MimeTypeMap;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import atirek.pothiwala.picker.core.CacheIndex;
+import atirek.pothiwala.picker.core.PickerFiles;
+
+public class ThumbnailCache {
+
+    public enum SizeClass {
+        SMALL(96), MEDIUM(256), LARGE(512);
+
+        private final int pixels;
+
+        SizeClass(int pixels) {
+            this.pixels = pixels;
+        }
+
+        public int getPixels() {
+            return pixels;
+        }
+    }
+
+    public interface OnThumbnailListener {
+        void onThumbnailLoaded(File file, Bitmap thumbnail);
+
+        void onThumbnailError(File file, Exception e);
+    }
+
+    private static final String FOLDER_NAME = ".thumbnails";
+    private static final int DISK_QUALITY = 80;
+    private static final long DEFAULT_DISK_QUOTA = 32 * 1024 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static ThumbnailCache instance;
+
+    public static synchronized ThumbnailCache getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new ThumbnailCache(context);
+        }
+        return instance;
+    }
+
+    private final Context context;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final Map<String, ThumbnailRequest> pendingRequests = new HashMap<>();
+    //Same LRU bookkeeping as the picker folder, the thumbnails are dropped oldest first past the quota
+    private final CacheIndex diskIndex;
+    private volatile long diskQuota = DEFAULT_DISK_QUOTA;
+    private Executor executor;
+
+    private ThumbnailCache(Context context) {
+        this.context = context.getApplicationContext();
+        int cacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        this.memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+        this.diskIndex = new CacheIndex(getDiskDirectory());
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    //Applied with the next thumbnail written, the index is only read on the workers
+    public void setDiskQuota(long quotaBytes) {
+        this.diskQuota = quotaBytes;
+    }
+
+    public Bitmap getCached(@NonNull File file, @NonNull SizeClass sizeClass) {
+        return memoryCache.get(getKey(file, sizeClass));
+    }
+
+    public void load(@NonNull final File file, @NonNull SizeClass sizeClass, @NonNull final OnThumbnailListener listener) {
+        Bitmap cached = getCached(file, sizeClass);
+        if (cached != null) {
+            listener.onThumbnailLoaded(file, cached);
+            return;
+        }
+
+        ThumbnailRequest request;
+        boolean isNew;
+        String key = getKey(file, sizeClass);
+        synchronized (pendingRequests) {
+            request = pendingRequests.get(key);
+            isNew = request == null;
+            if (isNew) {
+                request = new ThumbnailRequest(key, file, sizeClass);
+                pendingRequests.put(key, request);
+            }
+            request.listeners.add(listener);
+        }
+        if (isNew) {
+            try {
+                getExecutor().execute(request);
+            } catch (RejectedExecutionException e) {
+                //Completes the request, so its listeners hear about it and a later load tries again
+                request.reject(e);
+            }
+        }
+    }
+
+    //Blocking variant for worker threads, joins a decode already running for the same key
+    public Bitmap loadSync(@NonNull File file, @NonNull SizeClass sizeClass) throws IOException {
+        Bitmap cached = getCached(file, sizeClass);
+        if (cached != null) {
+            return cached;
+        }
+
+        ThumbnailRequest request;
+        boolean isNew;
+        String key = getKey(file, sizeClass);
+        synchronized (pendingRequests) {
+            request = pendingRequests.get(key);
+            isNew = request == null;
+            if (isNew) {
+                request = new ThumbnailRequest(key, file, sizeClass);
+                pendingRequests.put(key, request);
+            }
+        }
+        if (isNew) {
+            request.run();
+        }
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading thumbnail");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(String.valueOf(e.getCause()));
+        }
+    }
+
+    public void trimMemory() {
+        memoryCache.evictAll();
+    }
+
+    public void clear() {
+        memoryCache.evictAll();
+        File[] files = getDiskDirectory().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                FileConfigure.deleteFile(file);
+            }
+        }
+        diskIndex.clear();
+    }
+
+    private Bitmap loadThumbnail(File file, SizeClass sizeClass, String key) throws IOException {
+        File diskFile = new File(getDiskDirectory(), toHex(key) + ".jpg");
+        Bitmap thumbnail = null;
+        if (diskFile.isFile()) {
+            thumbnail = BitmapFactory.decodeFile(diskFile.getAbsolutePath());
+            if (thumbnail != null) {
+                diskIndex.touch(diskFile);
+            }
+        }
+        if (thumbnail == null) {
+            thumbnail = fit(decode(file, sizeClass.getPixels()), sizeClass.getPixels());
+            if (writeDisk(thumbnail, diskFile)) {
+                if (diskIndex.getQuota() != diskQuota) {
+                    diskIndex.setQuota(diskQuota);
+                }
+                diskIndex.register(diskFile, null);
+            }
+        }
+        memoryCache.put(key, thumbnail);
+        return thumbnail;
+    }
+
+    private Bitmap decode(File file, int pixels) throws IOException {
+        String mimeType = getMimeType(file);
+        Bitmap bitmap = null;
+        if (mimeType.startsWith("image/")) {
+            bitmap = decodeImage(file, pixels);
+        } else if (mimeType.startsWith("video/")) {
+            bitmap = decodeRetriever(file, false);
+        } else if (mimeType.startsWith("audio/")) {
+            bitmap = decodeRetriever(file, true);
+        } else if (mimeType.equals("application/pdf")) {
+            bitmap = decodePdf(file, pixels);
+        }
+        if (bitmap == null) {
+            throw new IOException("No thumbnail available for " + file.getName());
+        }
+        return bitmap;
+    }
+
+    private static Bitmap decodeImage(File file, int pixels) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        int sampleSize = 1;
+        while (Math.min(options.outWidth, options.outHeight) / (sampleSize * 2) >= pixels) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+    }
+
+    private static Bitmap decodeRetriever(File file, boolean isAudio) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(file.getAbsolutePath());
+            if (isAudio) {
+                byte[] picture = retriever.getEmbeddedPicture();
+                return picture != null ? BitmapFactory.decodeByteArray(picture, 0, picture.length) : null;
+            }
+            return retriever.getFrameAtTime();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    private static Bitmap decodePdf(File file, int pixels) throws IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return null;
+        }
+        ParcelFileDescriptor descriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        PdfRenderer renderer = null;
+        try {
+            renderer = new PdfRenderer(descriptor);
+            if (renderer.getPageCount() == 0) {
+                return null;
+            }
+            PdfRenderer.Page page = renderer.openPage(0);
+            try {
+                float scale = (float) pixels / Math.max(page.getWidth(), page.getHeight());
+                int width = Math.max(1, Math.round(page.getWidth() * scale));
+                int height = Math.max(1, Math.round(page.getHeight() * scale));
+                Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                bitmap.eraseColor(Color.WHITE);
+                page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                return bitmap;
+            } finally {
+                page.close();
+            }
+        } finally {
+            if (renderer != null) {
+                renderer.close();
+            } else {
+                descriptor.close();
+            }
+        }
+    }
+
+    private static Bitmap fit(Bitmap bitmap, int pixels) {
+        int largest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (largest <= pixels) {
+            return bitmap;
+        }
+        float scale = (float) pixels / largest;
+        int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private static boolean writeDisk(Bitmap thumbnail, File diskFile) {
+        File partial = PickerFiles.partialFile(diskFile);
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(partial);
+            boolean isWritten = thumbnail.compress(Bitmap.CompressFormat.JPEG, DISK_QUALITY, outputStream);
+            outputStream.close();
+            outputStream = null;
+            if (!isWritten || !partial.renameTo(diskFile)) {
+                FileConfigure.deleteFile(partial);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            FileConfigure.deleteFile(partial);
+            return false;
+        } finally {
+            FileCopier.closeQuietly(outputStream);
+        }
+    }
+
+    private File getDiskDirectory() {
+        File directory = new File(FileConfigure.privateDirectory(context), FOLDER_NAME);
+        if (!directory.exists()) directory.mkdirs();
+        return directory;
+    }
+
+    private Executor getExecutor() {
+        if (executor == null) {
+            executor = PickerExecutor.getThumbnails();
+        }
+        return executor;
+    }
+
+    private static String getKey(File file, SizeClass sizeClass) {
+        return String.format(Locale.US, "%s|%d|%d|%s", file.getAbsolutePath(), file.length(), file.lastModified(), sizeClass.name());
+    }
+
+    private static String getMimeType(File file) {
+        String extension = MimeTypeMap.getFileExtensionFromUrl(file.getName());
+        String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension.toLowerCase(Locale.US));
+        return mimeType != null ? mimeType : "";
+    }
+
+    static String toHex(String key) {
+        byte[] bytes;
+        try {
+            bytes = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    private class ThumbnailRequest extends FutureTask<Bitmap> {
+
+        private final String key;
+        private final File file;
+        private final List<OnThumbnailListener> listeners = new ArrayList<>();
+
+        ThumbnailRequest(final String key, final File file, final SizeClass sizeClass) {
+            super(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws Exception {
+                    return loadThumbnail(file, sizeClass, key);
+                }
+            });
+            this.key = key;
+            this.file = file;
+        }
+
+        void reject(Exception e) {
+            setException(e);
+        }
+
+        @Override
+        protected void done() {
+            final List<OnThumbnailListener> waiting;
+            synchronized (pendingRequests) {
+                pendingRequests.remove(key);
+                waiting = new ArrayList<>(listeners);
+            }
+            if (waiting.isEmpty()) {
+                return;
+            }
+
+            Bitmap thumbnail = null;
+            Exception exception = null;
+            try {
+                thumbnail = get();
+            } catch (InterruptedException e) {
+                exception = e;
+            } catch (ExecutionException e) {
+                exception = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            final Bitmap result = thumbnail;
+            final Exception error = exception;
+            PickerExecutor.postToMain(new Runnable() {
+                @Override
+                public void run() {
+                    for (OnThumbnailListener listener : waiting) {
+                        if (error == null) {
+                            listener.onThumbnailLoaded(file, result);
+                        } else {
+                            listener.onThumbnailError(file, error);
+                        }
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package atirek.pothiwala.picker;
+
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import atirek.pothiwala.picker.core.PickerFiles;
+
+public class WaveformExtractor {
+
+    public interface OnWaveformListener {
+        void onWaveformProgress(float[] peaks, int filledCount);
+
+        void onWaveformReady(float[] peaks);
+
+        void onWaveformError(Exception e);
+    }
+
+    //Under the picker cache whatever folder the audio is in, named after its path
+    private static final String FOLDER_NAME = ".waveforms";
+    private static final int SIDECAR_MAGIC = 0x57415645;
+    private static final int SIDECAR_VERSION = 1;
+    private static final int SIDECAR_HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+    private static final long TIMEOUT_US = 10000;
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+    private final Context context;
+    private Executor executor;
+
+    public WaveformExtractor(@NonNull Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    //The sidecar is read on the executor too, a cached waveform still arrives through a posted callback
+    public void extract(@NonNull final File audioFile, final int peakCount, @NonNull final OnWaveformListener listener) {
+        Runnable extraction = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final float[] peaks = extractSync(audioFile, peakCount, listener);
+                    PickerExecutor.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onWaveformReady(peaks);
+                        }
+                    });
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                    PickerExecutor.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onWaveformError(e);
+                        }
+                    });
+                }
+            }
+        };
+        try {
+            getExecutor().execute(extraction);
+        } catch (final RejectedExecutionException e) {
+            PickerExecutor.postToMain(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onWaveformError(new IOException("Too many waveforms queued", e));
+                }
+            });
+        }
+    }
+
+    public float[] extractSync(@NonNull File audioFile, int peakCount, final OnWaveformListener listener) throws IOException {
+        float[] cached = loadSidecar(audioFile, peakCount);
+        if (cached != null) {
+            return cached;
+        }
+
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(audioFile.getAbsolutePath());
+            MediaFormat format = selectAudioTrack(extractor);
+            if (format == null || !format.containsKey(MediaFormat.KEY_DURATION)
+                    || !format.containsKey(MediaFormat.KEY_SAMPLE_RATE) || !format.containsKey(MediaFormat.KEY_CHANNEL_COUNT)) {
+                throw new IOException("No audio track with a known duration and layout in " + audioFile.getName());
+            }
+            long durationUs = format.getLong(MediaFormat.KEY_DURATION);
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            float[] peaks = new float[peakCount];
+            decode(extractor, codec, peaks, durationUs, sampleRate, channelCount, listener);
+            writeSidecar(audioFile, peaks);
+            return peaks;
+
+        } catch (RuntimeException e) {
+            //Codecs and odd formats throw all kinds, the listener must still hear about it
+            throw new IOException("Unable to decode " + audioFile.getName() + ": " + e.getMessage());
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    e.printStackTrace();
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    public float[] loadSidecar(@NonNull File audioFile, int peakCount) {
+        File sidecar = getSidecar(context, audioFile);
+        if (!sidecar.isFile() || sidecar.length() != SIDECAR_HEADER_SIZE + peakCount) {
+            return null;
+        }
+
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(sidecar);
+            FileChannel channel = inputStream.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != SIDECAR_MAGIC || buffer.getInt() != SIDECAR_VERSION || buffer.getInt() != peakCount
+                    || buffer.getLong() != audioFile.length() || buffer.getLong() != audioFile.lastModified()) {
+                return null;
+            }
+            float[] peaks = new float[peakCount];
+            for (int i = 0; i < peakCount; i++) {
+                peaks[i] = (buffer.get() & 0xFF) / 255f;
+            }
+            return peaks;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            FileCopier.closeQuietly(inputStream);
+        }
+    }
+
+    public static File getSidecar(@NonNull Context context, @NonNull File audioFile) {
+        return getSidecar(FileConfigure.privateDirectory(context), audioFile);
+    }
+
+    //The hidden folder keeps cache indexing and sweeping off the sidecars
+    static File getSidecar(@NonNull File pickerDirectory, @NonNull File audioFile) {
+        File directory = PickerFiles.directory(pickerDirectory, FOLDER_NAME);
+        return new File(directory, ThumbnailCache.toHex(audioFile.getAbsolutePath()) + ".wave");
+    }
+
+    static void clear(@NonNull Context context) {
+        File[] files = new File(FileConfigure.privateDirectory(context), FOLDER_NAME).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                FileConfigure.deleteFile(file);
+            }
+        }
+    }
+
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                return format;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void decode(MediaExtractor extractor, MediaCodec codec, float[] peaks, long durationUs,
+                               int sampleRate, int channelCount, OnWaveformListener listener) {
+        ByteBuffer[] inputBuffers = codec.getInputBuffers();
+        ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+        long totalFrames = Math.max(1, durationUs * sampleRate / 1000000L);
+        long frameIndex = 0;
+        int filledCount = 0;
+        long lastProgress = SystemClock.elapsedRealtime();
+        boolean isInputDone = false;
+        boolean isOutputDone = false;
+
+        while (!isOutputDone) {
+            if (!isInputDone) {
+                int inputIndex = codec.dequeueInputBuffer(TIMEOUT_US);
+                if (inputIndex >= 0) {
+                    int size = extractor.readSampleData(inputBuffers[inputIndex], 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        isInputDone = true;
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            int outputIndex = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (outputIndex >= 0) {
+                ByteBuffer output = outputBuffers[outputIndex];
+                output.position(info.offset);
+                output.limit(info.offset + info.size);
+                output.order(ByteOrder.nativeOrder());
+
+                //16-bit PCM, interleaved channels; one peak bucket spans several frames
+                while (output.remaining() >= 2 * channelCount) {
+                    int level = 0;
+                    for (int channel = 0; channel < channelCount; channel++) {
+                        level = Math.max(level, Math.abs(output.getShort()));
+                    }
+                    int bucket = (int) Math.min(peaks.length - 1, frameIndex * peaks.length / totalFrames);
+                    float peak = level / 32768f;
+                    if (peak > peaks[bucket]) {
+                        peaks[bucket] = peak;
+                    }
+                    filledCount = Math.max(filledCount, bucket + 1);
+                    frameIndex++;
+                }
+                codec.releaseOutputBuffer(outputIndex, false);
+                isOutputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+
+                long now = SystemClock.elapsedRealtime();
+                if (listener != null && !isOutputDone && now - lastProgress >= PROGRESS_INTERVAL_MILLIS) {
+                    lastProgress = now;
+                    postProgress(listener, peaks.clone(), filledCount);
+                }
+
+            } else if (outputIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                outputBuffers = codec.getOutputBuffers();
+            } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                MediaFormat outputFormat = codec.getOutputFormat();
+                if (outputFormat.containsKey(MediaFormat.KEY_CHANNEL_COUNT)) {
+                    channelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                }
+                int outputRate = outputFormat.containsKey(MediaFormat.KEY_SAMPLE_RATE)
+                        ? outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE) : sampleRate;
+                if (outputRate != sampleRate) {
+                    frameIndex = frameIndex * outputRate / sampleRate;
+                    sampleRate = outputRate;
+                    totalFrames = Math.max(1, durationUs * sampleRate / 1000000L);
+                }
+            }
+        }
+    }
+
+    private static void postProgress(final OnWaveformListener listener, final float[] peaks, final int filledCount) {
+        PickerExecutor.postToMain(new Runnable() {
+            @Override
+            public void run() {
+                listener.onWaveformProgress(peaks, filledCount);
+            }
+        });
+    }
+
+    private void writeSidecar(File audioFile, float[] peaks) {
+        File sidecar = getSidecar(context, audioFile);
+        File partial = PickerFiles.partialFile(sidecar);
+        ByteBuffer buffer = ByteBuffer.allocate(SIDECAR_HEADER_SIZE + peaks.length);
+        buffer.putInt(SIDECAR_MAGIC);
+        buffer.putInt(SIDECAR_VERSION);
+        buffer.putInt(peaks.length);
+        buffer.putLong(audioFile.length());
+        buffer.putLong(audioFile.lastModified());
+        for (float peak : peaks) {
+            buffer.put((byte) Math.round(Math.min(1f, peak) * 255));
+        }
+        buffer.flip();
+
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(partial);
+            FileChannel channel = outputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            outputStream.close();
+            outputStream = null;
+            if (!partial.renameTo(sidecar)) {
+                FileConfigure.deleteFile(partial);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            FileConfigure.deleteFile(partial);
+        } finally {
+            FileCopier.closeQuietly(outputStream);
+        }
+    }
+
+    private Executor getExecutor() {
+        if (executor == null) {
+            executor = PickerExecutor.getDefault();
+        }
+        return executor;
+    }
+}